@@ -0,0 +1,86 @@
+package dvroutingsimulator;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding of DV and content messages, in both wire formats,
+ * and forwarding of content messages with and without decoding them
+ *
+ * @author thanhvu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    int destinations;
+
+    @Param({"TEXT", "BINARY"})
+    String format;
+
+    private MessageCodec codec;
+    private DVMessage dvMessage;
+    private ByteBuffer dvPacket;
+    private ByteBuffer contentPacket;
+    private ByteBuffer out;
+
+    @Setup
+    public void setup() {
+        codec = "BINARY".equals(format) ? MessageCodec.BINARY : MessageCodec.TEXT;
+        DistanceVector dv = Fixtures.distanceVector(destinations, new Random(destinations));
+        dvMessage = new DVMessage(Fixtures.neighbor(0), Fixtures.neighbor(1), dv);
+        dvPacket = Fixtures.encode(codec, dvMessage);
+        contentPacket = Fixtures.encode(codec, Fixtures.contentMessage(10));
+        out = ByteBuffer.allocateDirect(Router.MAX_MESSAGE_SIZE);
+    }
+
+    @Benchmark
+    public Message decodeDV() {
+        return codec.decode(dvPacket.duplicate());
+    }
+
+    @Benchmark
+    public Message decodeContent() {
+        return codec.decode(contentPacket.duplicate());
+    }
+
+    @Benchmark
+    public int encodeDV() {
+        out.clear();
+        codec.encode(dvMessage, out);
+        return out.position();
+    }
+
+    @Benchmark
+    public int forwardContent() {
+        out.clear();
+        return codec.forwardContent(contentPacket.asReadOnlyBuffer(), Fixtures.neighbor(2), out).remaining();
+    }
+
+    @Benchmark
+    public int decodeForwardContent() {
+        ContentMessage m = (ContentMessage) codec.decode(contentPacket.duplicate());
+        m.reduceTimeTolive();
+        m.addRouter(Fixtures.neighbor(2));
+        out.clear();
+        codec.encode(m, out);
+        return out.position();
+    }
+}
@@ -0,0 +1,63 @@
+package dvroutingsimulator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Text form, copy and comparison of distance vectors
+ *
+ * @author thanhvu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceVectorBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    int destinations;
+
+    private DistanceVector dv;
+    private DistanceVector copy;
+    private String text;
+
+    @Setup
+    public void setup() {
+        dv = Fixtures.distanceVector(destinations, new Random(destinations));
+        copy = dv.deepCopy();
+        text = dv.toString();
+    }
+
+    @Benchmark
+    public DistanceVector parseText() {
+        return new DistanceVector(text);
+    }
+
+    @Benchmark
+    public String toText() {
+        return dv.toString();
+    }
+
+    @Benchmark
+    public DistanceVector deepCopy() {
+        return dv.deepCopy();
+    }
+
+    @Benchmark
+    public boolean equalCopy() {
+        return dv.equals(copy);
+    }
+}
@@ -0,0 +1,142 @@
+package dvroutingsimulator;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Addresses, distance vectors and routers shared by the benchmarks
+ *
+ * @author thanhvu
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Get the address of the i-th destination, an IPv4 literal so that the
+     * binary codec can send it
+     *
+     * @param i The index of the destination
+     * @return A distinct address for each i
+     */
+    static Address destination(int i) {
+        return Address.of("10." + ((i >> 16) & 0xFF) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF),
+                10000 + (i >>> 24));
+    }
+
+    /**
+     * Get the address of the i-th neighbor of the benchmarked router
+     *
+     * @param i The index of the neighbor
+     * @return A distinct address for each i, not a destination address
+     */
+    static Address neighbor(int i) {
+        return Address.of("192.168." + ((i >> 8) & 0xFF) + "." + (i & 0xFF), 9000);
+    }
+
+    /**
+     * Create a distance vector to the first destinations
+     *
+     * @param size The number of destinations
+     * @param random The source of the distances
+     * @return The distance vector
+     */
+    static DistanceVector distanceVector(int size, Random random) {
+        DistanceVector dv = new DistanceVector();
+        for (int i = 0; i < size; i++) {
+            dv.updateDistance(destination(i), 1 + random.nextInt(100));
+        }
+        return dv;
+    }
+
+    /**
+     * Create a content message that went through some routers
+     *
+     * @param hops The number of routers on the path
+     * @return The message
+     */
+    static ContentMessage contentMessage(int hops) {
+        ArrayList<Address> path = new ArrayList<>();
+        for (int i = 0; i < hops; i++) {
+            path.add(destination(i));
+        }
+        return new ContentMessage(neighbor(0), neighbor(1), 15 - hops, "benchmark payload", path);
+    }
+
+    /**
+     * Encode a message into a buffer the size of the largest message
+     *
+     * @param codec The codec
+     * @param m The message
+     * @return The buffer holding the encoded message, flipped
+     */
+    static ByteBuffer encode(MessageCodec codec, Message m) {
+        ByteBuffer buf = ByteBuffer.allocate(Router.MAX_MESSAGE_SIZE);
+        codec.encode(m, buf);
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Create a router whose neighbors all advertised a distance vector to
+     * the same destinations. Packets sent by the router are dropped and its
+     * timers never run.
+     *
+     * @param destinations The number of destinations in each vector
+     * @param neighbors The number of neighbors
+     * @return The router, with its routes computed
+     */
+    static Router router(int destinations, int neighbors) throws Exception {
+        Random random = new Random(destinations * 31 + neighbors);
+        Router r = new Router(Address.of("172.16.0.1", 9000), new RouterConfig(),
+                new DiscardTransport(), new SimulationScheduler());
+        for (int i = 0; i < neighbors; i++) {
+            r.addNeighbor(neighbor(i), 1 + random.nextInt(10));
+            r.updateDV(neighbor(i), distanceVector(destinations, random), 0);
+        }
+        r.runDVAlgorithm();
+        return r;
+    }
+
+    /**
+     * Silence the event log and the prints of the routers, they would
+     * dominate the measurements
+     */
+    static void silence() {
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    /**
+     * A transport dropping all the packets
+     */
+    private static class DiscardTransport implements Transport {
+
+        @Override
+        public void send(ByteBuffer packet, Neighbor dst) {
+            packet.position(packet.limit());
+        }
+
+        @Override
+        public SocketAddress receive(ByteBuffer dst) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package dvroutingsimulator;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The DV algorithm and the forwarding table of a router, for a number of
+ * destinations and neighbors
+ *
+ * @author thanhvu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    int destinations;
+
+    @Param({"2", "8", "32"})
+    int neighbors;
+
+    private Router router;
+    private Address[] lookups;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Fixtures.silence();
+        router = Fixtures.router(destinations, neighbors);
+        lookups = new Address[1024];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = Fixtures.destination((int) ((i * 2654435761L) % destinations));
+        }
+    }
+
+    /**
+     * Recompute every route from the stored neighbor vectors
+     */
+    @Benchmark
+    public boolean runDVAlgorithm() {
+        return router.runDVAlgorithm();
+    }
+
+    /**
+     * Look up the next hop of one destination in the forwarding table
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Neighbor forwardLookup() {
+        next = (next + 1) & (lookups.length - 1);
+        return router.nextHop(lookups[next]);
+    }
+}
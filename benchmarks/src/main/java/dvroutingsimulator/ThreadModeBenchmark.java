@@ -0,0 +1,138 @@
+package dvroutingsimulator;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Start a number of routers in one JVM, each with its own blocking listener
+ * and event loop, deliver one distance vector to each and stop them, on
+ * platform or virtual threads. Virtual threads need JDK 21, on older JDKs
+ * both modes run platform threads.
+ *
+ * @author thanhvu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ThreadModeBenchmark {
+
+    @Param({"platform", "virtual"})
+    String threads;
+
+    @Param({"100", "1000", "4000"})
+    int routers;
+
+    private RouterConfig config;
+    private ByteBuffer packet;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Fixtures.silence();
+        config = new RouterConfig();
+        config.virtualThreads = threads.equals("virtual");
+        DVMessage m = new DVMessage(Fixtures.neighbor(0), Fixtures.destination(0),
+                Fixtures.distanceVector(16, new Random(1)));
+        packet = Fixtures.encode(config.codec, m);
+    }
+
+    /**
+     * Start the routers, wait until each one has read its packet and stop
+     * them
+     */
+    @Benchmark
+    public void startReceiveStop() throws Exception {
+        CountDownLatch received = new CountDownLatch(routers);
+        Router[] started = new Router[routers];
+        QueueTransport[] transports = new QueueTransport[routers];
+        for (int i = 0; i < routers; i++) {
+            transports[i] = new QueueTransport(received);
+            started[i] = new Router(Fixtures.destination(i), config, transports[i]);
+            started[i].addNeighbor(Fixtures.neighbor(0), 1);
+            started[i].startListening();
+        }
+        for (QueueTransport t : transports) {
+            t.deliver(packet.duplicate());
+        }
+        received.await();
+        for (Router r : started) {
+            r.shutdown();
+        }
+    }
+
+    /**
+     * A transport reading the packets from a queue and dropping the ones it
+     * sends
+     */
+    private static class QueueTransport implements Transport {
+
+        private static final ByteBuffer CLOSED = ByteBuffer.allocate(0);
+        private static final SocketAddress SOURCE = new InetSocketAddress("192.168.0.0", 9000);
+
+        private final BlockingQueue<ByteBuffer> queue;
+        private final CountDownLatch received;
+        private int reads;
+
+        QueueTransport(CountDownLatch received) {
+            this.queue = new LinkedBlockingQueue<>();
+            this.received = received;
+        }
+
+        void deliver(ByteBuffer p) {
+            queue.add(p);
+        }
+
+        @Override
+        public void send(ByteBuffer p, Neighbor dst) {
+            p.position(p.limit());
+        }
+
+        /**
+         * Block until a packet is delivered; the second read means the first
+         * packet was handled
+         */
+        @Override
+        public SocketAddress receive(ByteBuffer dst) {
+            if (++reads == 2) {
+                received.countDown();
+            }
+            ByteBuffer p;
+            try {
+                p = queue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (p == CLOSED) {
+                return null;
+            }
+            dst.put(p);
+            return SOURCE;
+        }
+
+        @Override
+        public void close() {
+            queue.add(CLOSED);
+        }
+    }
+}
@@ -1,35 +1,97 @@
-
 package dvroutingsimulator;
 
 /**
- * A wrap-around class for the ip-port pair
+ * A wrap-around class for the ip-port pair. Addresses are interned by
+ * AddressTable so each ip-port pair exists once; use Address.of to get one.
  * @author hongha912
  */
 public class Address {
-    public String ip;
-    public int port;
+    public final String ip;
+    public final int port;
+    final int id;           // dense id given by AddressTable
+    final long ipv4;        // packed IPv4 of ip, -1 if ip is not an IPv4 literal
+    private final int hash;
     private static final String DLM = ":";
         
-    Address(String i, int p){
+    Address(String i, int p, int id){
         ip = i;
         port = p;
+        this.id = id;
+        hash = hash(i, p);
+        ipv4 = parseIPv4(i);
+    }
+
+    /**
+     * Get the canonical address of an ip-port pair
+     *
+     * @param ip The IP of the address
+     * @param port The port of the address
+     * @return The one Address instance for this ip and port
+     */
+    public static Address of(String ip, int port) {
+        return AddressTable.intern(ip, port);
+    }
+
+    /**
+     * Pack a dotted IPv4 literal into the low 32 bits of a long
+     *
+     * @param ip The IP to pack
+     * @return The packed IP, -1 if ip is not a dotted IPv4 literal
+     */
+    static long parseIPv4(String ip) {
+        long result = 0;
+        int octet = -1;
+        int octets = 0;
+        for (int i = 0; i <= ip.length(); i++) {
+            char c = i < ip.length() ? ip.charAt(i) : '.';
+            if (c == '.') {
+                if (octet < 0 || octet > 255 || ++octets > 4) {
+                    return -1;
+                }
+                result = (result << 8) | octet;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        return octets == 4 ? result : -1;
+    }
+
+    /**
+     * Format a packed IPv4 as a dotted literal
+     */
+    static String formatIPv4(int ip) {
+        return ((ip >>> 24) & 0xFF) + "." + ((ip >>> 16) & 0xFF) + "."
+                + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+    }
+
+    /**
+     * Hash an ip-port pair the same way as the Address holding it
+     */
+    static int hash(String ip, int port) {
+        int result = 17;
+        result = 31 * result + ip.hashCode();
+        result = 31 * result + port;
+        return result;
     }
     
+    /**
+     * Addresses are canonical, so two addresses are equal only if they are
+     * the same instance
+     */
     @Override
     public boolean equals(Object o) {
-        if (o instanceof Address) {
-            Address a = (Address) o;
-            return this.ip.equals(a.ip) && this.port == a.port;
-        }
-        return false;
+        return this == o;
     }
     
     @Override
     public int hashCode() {
-        int result = 17;
-        result = 31 * result + ip.hashCode();
-        result = 31 * result + port;
-        return result;
+        return hash;
     } 
     
     @Override
@@ -37,7 +99,10 @@ public class Address {
         return ip + DLM + port;
     }
     
+    /**
+     * Addresses are immutable and canonical, so the clone is the address itself
+     */
     public Address deepClone(){
-        return new Address(ip, port);
+        return this;
     }
 }
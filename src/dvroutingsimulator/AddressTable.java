@@ -0,0 +1,180 @@
+package dvroutingsimulator;
+
+import java.util.Arrays;
+
+/**
+ * Intern every address seen by the simulator, so that each ip-port pair has
+ * one Address instance, and give it a dense int id, so that per-destination
+ * data can be kept in arrays indexed by that id
+ *
+ * @author hongha912
+ */
+final class AddressTable {
+
+    private static volatile Address[] slots = new Address[64]; // open addressing, by hash
+    private static volatile Address[] addresses = new Address[16]; // by id
+    private static volatile Address[] ipv4Slots = new Address[64]; // open addressing, by packed ip-port
+    private static int ipv4Size = 0;
+    private static int size = 0;
+
+    private AddressTable() {
+    }
+
+    /**
+     * Get the canonical address of an ip-port pair, creating it with the next
+     * free id if the pair has never been seen before. Lookups of known
+     * addresses take no lock and allocate nothing.
+     *
+     * @param ip The IP of the address
+     * @param port The port of the address
+     * @return The canonical address
+     */
+    static Address intern(String ip, int port) {
+        int h = Address.hash(ip, port);
+        Address a = find(slots, ip, port, h);
+        if (a != null) {
+            return a;
+        }
+        synchronized (AddressTable.class) {
+            a = find(slots, ip, port, h);
+            if (a == null) {
+                a = new Address(ip.intern(), port, size);
+                Address[] byId = addresses;
+                if (size == byId.length) {
+                    byId = Arrays.copyOf(byId, size * 2);
+                }
+                byId[size] = a;
+                addresses = byId;
+                size++;
+
+                Address[] table = slots;
+                if (size * 2 > table.length) {
+                    table = new Address[table.length * 2];
+                    for (int id = 0; id < size - 1; id++) {
+                        insert(table, byId[id]);
+                    }
+                    insert(table, a);
+                } else {
+                    insert(table, a);
+                }
+                slots = table;
+            }
+            return a;
+        }
+    }
+
+    private static Address find(Address[] table, String ip, int port, int h) {
+        int mask = table.length - 1;
+        for (int i = h & mask;; i = (i + 1) & mask) {
+            Address a = table[i];
+            if (a == null) {
+                return null;
+            }
+            if (a.port == port && a.ip.equals(ip)) {
+                return a;
+            }
+        }
+    }
+
+    private static void insert(Address[] table, Address a) {
+        insert(table, a, a.hashCode());
+    }
+
+    private static void insert(Address[] table, Address a, int h) {
+        int mask = table.length - 1;
+        int i = h & mask;
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = a;
+    }
+
+    /**
+     * Get the canonical address of a packed IPv4 and port, as read from the
+     * binary wire format. Lookups of known addresses allocate nothing.
+     *
+     * @param ip The packed IPv4
+     * @param port The port of the address
+     * @return The canonical address
+     */
+    static Address intern(int ip, int port) {
+        long key = ((ip & 0xFFFFFFFFL) << 16) | port;
+        Address a = find(ipv4Slots, key);
+        if (a != null) {
+            return a;
+        }
+        a = intern(Address.formatIPv4(ip), port);
+        synchronized (AddressTable.class) {
+            if (find(ipv4Slots, key) == null) {
+                Address[] table = ipv4Slots;
+                ipv4Size++;
+                if (ipv4Size * 2 > table.length) {
+                    Address[] grown = new Address[table.length * 2];
+                    for (Address old : table) {
+                        if (old != null) {
+                            insert(grown, old, hashIPv4(old.ipv4, old.port));
+                        }
+                    }
+                    table = grown;
+                }
+                insert(table, a, hashIPv4(a.ipv4, a.port));
+                ipv4Slots = table;
+            }
+        }
+        return a;
+    }
+
+    private static Address find(Address[] table, long key) {
+        int mask = table.length - 1;
+        for (int i = hashIPv4(key >>> 16, (int) key & 0xFFFF) & mask;; i = (i + 1) & mask) {
+            Address a = table[i];
+            if (a == null) {
+                return null;
+            }
+            if (a.port == (int) (key & 0xFFFF) && a.ipv4 == key >>> 16) {
+                return a;
+            }
+        }
+    }
+
+    private static int hashIPv4(long ip, int port) {
+        int h = (int) (ip * 31 + port) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Get the id of an address
+     *
+     * @param a The address
+     * @return The id of the address, in [0, size())
+     */
+    static int idOf(Address a) {
+        return a.id;
+    }
+
+    /**
+     * Get the address that owns an id
+     *
+     * @param id An id of an interned address
+     * @return The address with this id
+     */
+    static Address get(int id) {
+        Address a = addresses[id];
+        if (a == null) {
+            // the id was read from a racy lookup before its slot was published
+            synchronized (AddressTable.class) {
+                a = addresses[id];
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Get the number of addresses interned so far
+     *
+     * @return The number of known addresses
+     */
+    static int size() {
+        return size;
+    }
+}
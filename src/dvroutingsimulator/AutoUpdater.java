@@ -1,8 +1,6 @@
 package dvroutingsimulator;
 
 import java.io.IOException;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -14,7 +12,7 @@ import java.util.logging.Logger;
 public class AutoUpdater implements Runnable {
 
     private final Router r;
-    private Timer timer;
+    private Scheduler.Cancellable timer;
     static final long T = 20;           // period between scheduled tasks, t seconds
     private long timeCnt;     // time count from beginning of thread to now
 
@@ -29,12 +27,11 @@ public class AutoUpdater implements Runnable {
     }
 
     /**
-     * Run this thread
+     * Schedule the periodic advertisement on the router's scheduler
      */
     @Override
     public void run() {
-        timer = new Timer();
-        timer.scheduleAtFixedRate(new TimerTask() {
+        timer = r.getScheduler().scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -52,7 +49,9 @@ public class AutoUpdater implements Runnable {
      * Stop this thread
      */
     public void stop() {
-        timer.cancel();
+        if (timer != null) {
+            timer.cancel();
+        }
         timeCnt = 0;
     }
 
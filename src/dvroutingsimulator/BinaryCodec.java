@@ -0,0 +1,278 @@
+package dvroutingsimulator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Compact binary wire format, encoded and decoded in one pass over a buffer.
+ * All messages start with the same header:
+ *
+ * version(1) type(1) srcIPv4(4) srcPort(2) dstIPv4(4) dstPort(2)
+ *
+ * followed by the fields of each type of msg:
+ *
+ * DV:      varint seq (IPv4(4) port(2) varint dist) ... up to the end of the message
+ * DVDELTA: varint seq varint withdrawnCount (IPv4(4) port(2)) ...
+ *          (IPv4(4) port(2) varint dist) ... up to the end of the message
+ * WEIGHT:  varint weight
+ * CONTENT: timeToLive(2) varint msgLength msg(UTF-8) (IPv4(4) port(2)) ...
+ *          with the path running up to the end of the message
+ *
+ * Varints are zig-zag encoded base-128 integers. Addresses must be IPv4
+ * literals to be packed.
+ *
+ * @author thanhvu
+ */
+class BinaryCodec extends MessageCodec {
+
+    static final byte VERSION = (byte) 0x81; // high bit set: never the start of a text message
+    static final int HEADER_SIZE = 14;
+    static final int ADDRESS_SIZE = 6;
+
+    @Override
+    void encode(Message m, ByteBuffer out) {
+        out.put(VERSION);
+        out.put((byte) m.getType().ordinal());
+        putAddress(out, m.getSrcAddress());
+        putAddress(out, m.getDstAddress());
+        switch (m.getType()) {
+            case DV:
+                DVMessage dm = (DVMessage) m;
+                putVarint(out, dm.getSeq());
+                putDistVect(out, dm.getDistVect());
+                return;
+            case DVDELTA:
+                DVDeltaMessage ddm = (DVDeltaMessage) m;
+                putVarint(out, ddm.getSeq());
+                putVarint(out, ddm.getWithdrawn().size());
+                for (Address a : ddm.getWithdrawn()) {
+                    putAddress(out, a);
+                }
+                for (int i = 0; i < ddm.changedCount(); i++) {
+                    putAddress(out, AddressTable.get(ddm.changedId(i)));
+                    putVarint(out, ddm.changedDistance(i));
+                }
+                return;
+            case WEIGHT:
+                putVarint(out, ((WeightMessage) m).getWeight());
+                return;
+            case CONTENT:
+                ContentMessage cm = (ContentMessage) m;
+                out.putShort((short) Math.max(0, Math.min(cm.getTimeToLive(), 0xFFFF)));
+                byte[] msg = cm.getMessage().getBytes(StandardCharsets.UTF_8);
+                putVarint(out, msg.length);
+                out.put(msg);
+                for (Address a : cm.getPath()) {
+                    putAddress(out, a);
+                }
+        }
+    }
+
+    @Override
+    void encodeVector(DistanceVector dv, BitSet poisoned, int poison, ByteBuffer out) {
+        for (int id = dv.nextId(0); id >= 0; id = dv.nextId(id + 1)) {
+            int distance = poisoned != null && poisoned.get(id) ? poison : dv.distance(id);
+            if (distance != DistanceVector.NONE) {
+                putAddress(out, AddressTable.get(id));
+                putVarint(out, distance);
+            }
+        }
+    }
+
+    @Override
+    void encodeDV(Address src, Address dst, int seq, ByteBuffer vector, ByteBuffer out) {
+        out.put(VERSION);
+        out.put((byte) MsgType.DV.ordinal());
+        putAddress(out, src);
+        putAddress(out, dst);
+        putVarint(out, seq);
+        out.put(vector.duplicate());
+    }
+
+    @Override
+    Address contentDestination(ByteBuffer in) {
+        int start = in.position();
+        if (in.remaining() < HEADER_SIZE || in.get(start) != VERSION) {
+            throw new IllegalArgumentException("Wrong format. Not a binary message.");
+        }
+        if (in.get(start + 1) != MsgType.CONTENT.ordinal()) {
+            return null;
+        }
+        return AddressTable.intern(in.getInt(start + 8), in.getShort(start + 12) & 0xFFFF);
+    }
+
+    @Override
+    int contentFlow(ByteBuffer in) {
+        ByteBuffer content = in.duplicate();
+        int start = content.position();
+        Address src = AddressTable.intern(content.getInt(start + 2), content.getShort(start + 6) & 0xFFFF);
+        Address dst = AddressTable.intern(content.getInt(start + 8), content.getShort(start + 12) & 0xFFFF);
+        content.position(start + HEADER_SIZE + 2);
+        int length = getVarint(content);
+        if (length < 0 || length > content.remaining()) {
+            throw new IllegalArgumentException("Wrong format. Bad message length.");
+        }
+        content.limit(content.position() + length);
+        return ContentMessage.flowHash(src, dst, content);
+    }
+
+    /**
+     * The time to live is patched at its fixed offset and the hop written
+     * after the last byte, where the path ends
+     */
+    @Override
+    ByteBuffer forwardContent(ByteBuffer in, Address hop, ByteBuffer spare) {
+        int start = in.position();
+        int end = in.limit();
+        if (end - start < HEADER_SIZE + 2 || hop.ipv4 < 0) {
+            return null;
+        }
+        int timeToLive = in.getShort(start + HEADER_SIZE) & 0xFFFF;
+        if (timeToLive <= 0) {
+            return null;
+        }
+        ByteBuffer out;
+        if (!in.isReadOnly() && in.capacity() - end >= ADDRESS_SIZE) {
+            out = in;
+            out.limit(end + ADDRESS_SIZE);
+            out.position(end);
+        } else {
+            out = spare.capacity() - spare.position() >= end - start + ADDRESS_SIZE
+                    ? spare : ByteBuffer.allocate(end - start + ADDRESS_SIZE);
+            start = out.position();
+            out.put(in.duplicate());
+        }
+        out.putShort(start + HEADER_SIZE, (short) (timeToLive - 1));
+        putAddress(out, hop);
+        out.limit(out.position());
+        out.position(start);
+        return out;
+    }
+
+    @Override
+    Message decode(ByteBuffer in) {
+        if (in.remaining() < HEADER_SIZE || in.get() != VERSION) {
+            throw new IllegalArgumentException("Wrong format. Not a binary message.");
+        }
+        int typeCode = in.get();
+        if (typeCode < 0 || typeCode >= MsgType.values().length) {
+            throw new IllegalArgumentException("Wrong type. Not a Message.");
+        }
+        MsgType type = MsgType.values()[typeCode];
+        Address src = getAddress(in);
+        Address dst = getAddress(in);
+        switch (type) {
+            case DV:
+                int seq = getVarint(in);
+                return new DVMessage(src, dst, getDistVect(in), seq);
+            case DVDELTA:
+                int deltaSeq = getVarint(in);
+                int count = getVarint(in);
+                if (count < 0 || count > in.remaining() / ADDRESS_SIZE) {
+                    throw new IllegalArgumentException("Wrong format. Bad withdrawn count.");
+                }
+                List<Address> withdrawn = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    withdrawn.add(getAddress(in));
+                }
+                // each entry takes an address and at least one byte of distance
+                int[] ids = new int[in.remaining() / (ADDRESS_SIZE + 1)];
+                int[] dists = new int[ids.length];
+                int entries = 0;
+                while (in.hasRemaining()) {
+                    ids[entries] = getAddress(in).id;
+                    dists[entries++] = getDistance(in);
+                }
+                return new DVDeltaMessage(src, dst, deltaSeq, Arrays.copyOf(ids, entries),
+                        Arrays.copyOf(dists, entries), withdrawn);
+            case WEIGHT:
+                return new WeightMessage(src, dst, getVarint(in));
+            default:
+                int timeToLive = in.getShort() & 0xFFFF;
+                int length = getVarint(in);
+                if (length < 0 || length > in.remaining()) {
+                    throw new IllegalArgumentException("Wrong format. Bad content length.");
+                }
+                byte[] msg = new byte[length];
+                in.get(msg);
+                ArrayList<Address> path = new ArrayList<>();
+                while (in.hasRemaining()) {
+                    path.add(getAddress(in));
+                }
+                return new ContentMessage(src, dst, timeToLive, new String(msg, StandardCharsets.UTF_8), path);
+        }
+    }
+
+    /**
+     * Write the entries of a distance vector, up to the end of the message
+     */
+    static void putDistVect(ByteBuffer out, DistanceVector dv) {
+        for (int id = dv.nextId(0); id >= 0; id = dv.nextId(id + 1)) {
+            putAddress(out, AddressTable.get(id));
+            putVarint(out, dv.distance(id));
+        }
+    }
+
+    /**
+     * Read distance vector entries up to the end of the message, distances
+     * are never negative
+     */
+    static DistanceVector getDistVect(ByteBuffer in) {
+        DistanceVector dv = new DistanceVector();
+        while (in.hasRemaining()) {
+            Address a = getAddress(in);
+            dv.updateDistance(a.id, getDistance(in));
+        }
+        return dv;
+    }
+
+    /**
+     * Read the distance of an entry, never negative
+     */
+    private static int getDistance(ByteBuffer in) {
+        int d = getVarint(in);
+        if (d < 0) {
+            throw new IllegalArgumentException("Wrong format. Negative distance.");
+        }
+        return d;
+    }
+
+    static void putAddress(ByteBuffer out, Address a) {
+        if (a.ipv4 < 0) {
+            throw new IllegalArgumentException(a + " is not an IPv4 address, binary wire format needs IPv4 literals");
+        }
+        out.putInt((int) a.ipv4);
+        out.putShort((short) a.port);
+    }
+
+    static Address getAddress(ByteBuffer in) {
+        int ip = in.getInt();
+        int port = in.getShort() & 0xFFFF;
+        return AddressTable.intern(ip, port);
+    }
+
+    static void putVarint(ByteBuffer out, int value) {
+        int v = (value << 1) ^ (value >> 31);
+        while ((v & ~0x7F) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    static int getVarint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IllegalArgumentException("Wrong format. Varint too long.");
+    }
+}
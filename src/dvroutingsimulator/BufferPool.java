@@ -0,0 +1,60 @@
+package dvroutingsimulator;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of direct buffers, so that sending a packet does not allocate
+ *
+ * @author thanhvu
+ */
+class BufferPool {
+
+    private final Queue<ByteBuffer> free;
+    private final AtomicInteger freeCount;
+    private final int bufferSize;
+    private final int maxFree;
+
+    /**
+     * Create a pool
+     *
+     * @param bufferSize The capacity of the buffers
+     * @param maxFree The number of released buffers kept for reuse
+     */
+    BufferPool(int bufferSize, int maxFree) {
+        this.free = new ConcurrentLinkedQueue<>();
+        this.freeCount = new AtomicInteger();
+        this.bufferSize = bufferSize;
+        this.maxFree = maxFree;
+    }
+
+    /**
+     * Take a cleared buffer from the pool, allocate one if the pool is empty
+     *
+     * @return A buffer of bufferSize bytes
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buf = free.poll();
+        if (buf == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        freeCount.decrementAndGet();
+        buf.clear();
+        return buf;
+    }
+
+    /**
+     * Give a buffer back to the pool
+     *
+     * @param buf A buffer returned by acquire, not used after this call
+     */
+    void release(ByteBuffer buf) {
+        if (freeCount.incrementAndGet() <= maxFree) {
+            free.offer(buf);
+        } else {
+            freeCount.decrementAndGet();
+        }
+    }
+}
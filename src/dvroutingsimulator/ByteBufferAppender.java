@@ -0,0 +1,76 @@
+package dvroutingsimulator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An Appendable writing UTF-8 straight into a ByteBuffer, so that text is
+ * serialized into a send buffer without building a String first. Like the
+ * put methods of the buffer, appending throws BufferOverflowException when
+ * the buffer is full.
+ *
+ * @author thanhvu
+ */
+final class ByteBufferAppender implements Appendable {
+
+    private final ByteBuffer out;
+    private char highSurrogate;
+
+    /**
+     * Create an appender
+     *
+     * @param out The buffer written to, from its position
+     */
+    ByteBufferAppender(ByteBuffer out) {
+        this.out = out;
+    }
+
+    @Override
+    public ByteBufferAppender append(CharSequence csq) {
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public ByteBufferAppender append(CharSequence csq, int start, int end) {
+        for (int i = start; i < end; i++) {
+            append(csq.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public ByteBufferAppender append(char c) {
+        if (c < 0x80 && highSurrogate == 0) {
+            out.put((byte) c);
+        } else if (Character.isHighSurrogate(c)) {
+            if (highSurrogate != 0) {
+                out.put((byte) '?'); // unpaired surrogate, as String.getBytes does
+            }
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c) && highSurrogate != 0) {
+            int cp = Character.toCodePoint(highSurrogate, c);
+            highSurrogate = 0;
+            out.put((byte) (0xF0 | (cp >> 18)))
+                    .put((byte) (0x80 | ((cp >> 12) & 0x3F)))
+                    .put((byte) (0x80 | ((cp >> 6) & 0x3F)))
+                    .put((byte) (0x80 | (cp & 0x3F)));
+        } else {
+            if (highSurrogate != 0) {
+                out.put((byte) '?');
+                highSurrogate = 0;
+            }
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)))
+                        .put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                out.put((byte) (0xE0 | (c >> 12)))
+                        .put((byte) (0x80 | ((c >> 6) & 0x3F)))
+                        .put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return this;
+    }
+}
@@ -23,8 +23,18 @@ public class ConsoleReader implements Runnable {
      * @param r The router this thread is bound to
      */
     public ConsoleReader(Router r) {
+        this(r, new Scanner(System.in));
+    }
+
+    /**
+     * Create a reader of the commands of a router from a given input
+     *
+     * @param r The router this thread is bound to
+     * @param sc The input the thread reads
+     */
+    ConsoleReader(Router r, Scanner sc) {
         this.r = r;
-        sc = new Scanner(System.in);
+        this.sc = sc;
         running = false;
     }
 
@@ -35,23 +45,41 @@ public class ConsoleReader implements Runnable {
     public void run() {
         running = true;
         while (running) {
-            String[] tmp = sc.nextLine().split(DLM);
-            if (tmp.length < 1) {
-                System.out.println("No command found!");
-            } else if (tmp[0].equalsIgnoreCase("PRINT")) {
-                print();
-            } else if (tmp[0].equalsIgnoreCase("MSG")) {
-                msg(tmp);
-            } else if (tmp[0].equalsIgnoreCase("CHANGE")) {
-                change(tmp);
-            } else if (tmp[0].equalsIgnoreCase("STOP")) {
-                r.stop();
-            } else {
-                System.out.println("Wrong command format!");
+            final String[] tmp = sc.nextLine().split(DLM);
+            // the command runs on the event loop of the router
+            r.execute(new Runnable() {
+                @Override
+                public void run() {
+                    command(tmp);
+                }
+            });
+            if (tmp[0].equalsIgnoreCase("STOP")) {
+                running = false; // the loop exits the program
             }
         }
     }
 
+    /**
+     * Run a command
+     *
+     * @param tmp The fields of the command line
+     */
+    void command(String[] tmp) {
+        if (tmp.length < 1) {
+            System.out.println("No command found!");
+        } else if (tmp[0].equalsIgnoreCase("PRINT")) {
+            print();
+        } else if (tmp[0].equalsIgnoreCase("MSG")) {
+            msg(tmp);
+        } else if (tmp[0].equalsIgnoreCase("CHANGE")) {
+            change(tmp);
+        } else if (tmp[0].equalsIgnoreCase("STOP")) {
+            r.stop();
+        } else {
+            System.out.println("Wrong command format!");
+        }
+    }
+
     /**
      * Print the current node's distance vector, and the distance vectors
      * received from the neighbors.
@@ -72,7 +100,7 @@ public class ConsoleReader implements Runnable {
         } else {
             String dstIP = fields[1];
             int dstPort = Integer.parseInt(fields[2]);
-            Address dstAdd = new Address(dstIP, dstPort);
+            Address dstAdd = Address.of(dstIP, dstPort);
 
             StringBuilder msg = new StringBuilder();
             for (int i = 3; i < fields.length; i++) {
@@ -100,7 +128,7 @@ public class ConsoleReader implements Runnable {
             String dstIP = fields[1];
             int dstPort = Integer.parseInt(fields[2]);
             int newW = Integer.parseInt(fields[3]);
-            Address dstAdd = new Address(dstIP, dstPort);
+            Address dstAdd = Address.of(dstIP, dstPort);
 
             if (dstAdd.equals(r.getAddress())) {
                 System.out.println("Invalid destination. Router's weight to itself should be 0");
@@ -111,10 +139,11 @@ public class ConsoleReader implements Runnable {
                     r.sendWeightMsg(dstAdd, newW);
 
                     // Update its own weight
-                    if (r.updateWeight(new Address(dstIP, dstPort), newW)) {
-                        // if it's a different weight, run DV algorithm and advertise if necessary
-                        if (r.runDVAlgorithm()) {
-                            r.advertiseDV(false);
+                    if (r.updateWeight(dstAdd, newW)) {
+                        // if it's a different weight, rerun DV algorithm for the routes
+                        // depending on that link and advertise if necessary
+                        if (!r.runDVAlgorithm(r.affectedBy(dstAdd)).isEmpty()) {
+                            r.triggerUpdate();
                         }
                     }
                 } catch (IOException ex) {
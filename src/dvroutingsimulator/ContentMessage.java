@@ -1,5 +1,9 @@
 package dvroutingsimulator;
 
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
 /**
@@ -12,8 +16,8 @@ public class ContentMessage extends Message {
     private int timeToLive; // max number of remaining hops, decremented at each router
     private ArrayList<Address> path; // addresses of routers in the path
     private String msg;
-    private static final String pDLM = " "; //path delimiter
-    private static final String iDLM = "-"; //ip-port delimiter
+    static final String pDLM = " "; //path delimiter
+    static final String iDLM = "-"; //ip-port delimiter
 
     /**
      * Constructor for ContentMessage
@@ -33,40 +37,19 @@ public class ContentMessage extends Message {
     }
 
     /**
-     * Constructor that parses a string representation of a ContentMessage
-     *
-     * @param text The message to parse. Should have at least 7 fields,
-     * with the following format:
-     *
-     * "type[DLM]srcIP[DLM]srcPort[DLM]
-     * dstIP[DLM]dstPort[DLM]timeToLive[DLM]msg[DLM]
-     * ip[iDLM]port[pDLM]ip[iDLM]port ..."
+     * Constructor for a ContentMessage decoded from the wire
      *
+     * @param srcAdd address of source router
+     * @param dstAdd address of destination router
+     * @param remainingHops the message's remaining time-to-live
+     * @param mess the message content
+     * @param path addresses of the routers the message went through
      */
-    public ContentMessage(String text) {
-        super(text);
-//        System.out.println("Incoming protocol: "+ text);
-        if (this.type != MsgType.CONTENT) {
-            System.out.println("ERROR: Not a CONTENT Type.");
-            return;
-        }
-        String[] fields = text.split(this.DLM);
-
-        if (fields.length < 7) {
-            System.out.println("ERROR: Wrong format. Not enough fields.");
-            return;
-        }
-
-        this.timeToLive = Integer.parseInt(fields[5]);
-        this.msg = fields[6];
-        this.path = new ArrayList<>();
-        if (fields.length > 7) {
-            for (String address : fields[7].split(pDLM)) {
-                String[] tmp = address.split(iDLM);
-                Address path_router = new Address(tmp[0], Integer.parseInt(tmp[1]));
-                addRouter(path_router);
-            }
-        }
+    ContentMessage(Address srcAdd, Address dstAdd, int remainingHops, String mess, ArrayList<Address> path) {
+        super(MsgType.CONTENT, srcAdd, dstAdd);
+        this.msg = mess;
+        this.timeToLive = remainingHops;
+        this.path = path;
     }
 
     /**
@@ -80,24 +63,52 @@ public class ContentMessage extends Message {
     }
 
     /**
-     * Output a string representation of a ContentMessage 
+     * Write a string representation of a ContentMessage 
      * using the following format:
      *
      * "type[DLM]srcIP[DLM]srcPort[DLM]
      * dstIP[DLM]dstPort[DLM]timeToLive[DLM]msg[DLM]
      * ip[iDLM]port[pDLM]ip[iDLM]port ..."
      *
-     * @return a string representation of a content message
+     * @param out The destination of the text
+     * @throws IOException If out cannot be written to
      */
     @Override
-    public String toString() {
-        String output = type + DLM + srcAdd.ip + DLM + srcAdd.port
-                + DLM + dstAdd.ip + DLM + dstAdd.port
-                + DLM + timeToLive + DLM + msg + DLM;
+    public void writeTo(Appendable out) throws IOException {
+        super.writeTo(out);
+        out.append(Integer.toString(timeToLive)).append(DLM).append(msg).append(DLM);
         for (Address ad : path) {
-            output += ad.ip + iDLM + ad.port + pDLM;
+            out.append(ad.ip).append(iDLM).append(Integer.toString(ad.port)).append(pDLM);
         }
-        return output + DLM;
+        out.append(DLM);
+    }
+
+    /**
+     * Get the hash of the flow of a message: its source, destination and
+     * payload, so that the same message always takes the same path
+     *
+     * @param src address of source router
+     * @param dst address of destination router
+     * @param payload the UTF-8 bytes of the message content, between the
+     * position and limit of the buffer, left unchanged
+     * @return the hash of the flow
+     */
+    static int flowHash(Address src, Address dst, ByteBuffer payload) {
+        int h = 31 * src.hashCode() + dst.hashCode();
+        for (int i = payload.position(); i < payload.limit(); i++) {
+            h = 31 * h + payload.get(i);
+        }
+        return h;
+    }
+
+    /**
+     * Get the hash of the flow of this message, see flowHash(Address,
+     * Address, ByteBuffer)
+     *
+     * @return the hash of the flow
+     */
+    public int flowHash() {
+        return flowHash(getSrcAddress(), getDstAddress(), ByteBuffer.wrap(msg.getBytes(StandardCharsets.UTF_8)));
     }
 
     /**
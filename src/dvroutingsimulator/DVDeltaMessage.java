@@ -0,0 +1,144 @@
+package dvroutingsimulator;
+
+import java.io.IOException;
+
+import java.util.List;
+
+/**
+ * A router control message that carries only the part of its distance vector
+ * that changed since its previous advertisement to the same neighbor: the
+ * updated entries, and the destinations withdrawn from the vector. The
+ * entries are a list of (address id, distance) pairs, applied as they are,
+ * so a delta of one route costs one entry to build, send and parse.
+ *
+ * Every advertisement from a router to a neighbor, full DVMessage or delta,
+ * has the next sequence number of that pair of routers. A delta is applied
+ * only on top of the advertisement right before it; a receiver that missed
+ * one ignores the deltas until the next full DVMessage.
+ *
+ * @author thanhvu
+ */
+public class DVDeltaMessage extends Message {
+
+    private final int seq;
+    private final int[] changedIds;
+    private final int[] changedDists;
+    private final List<Address> withdrawn;
+
+    /**
+     * Constructor for DVDeltaMessage
+     *
+     * @param srcAdd IP and port of source router
+     * @param dstAdd IP and port of destination router
+     * @param seq the sequence number of this advertisement to dstAdd
+     * @param changedIds the address ids of the changed destinations
+     * @param changedDists the new distances of the changed destinations, in
+     * the same order
+     * @param withdrawn the destinations removed from the distance vector
+     */
+    DVDeltaMessage(Address srcAdd, Address dstAdd, int seq, int[] changedIds, int[] changedDists,
+            List<Address> withdrawn) {
+        super(MsgType.DVDELTA, srcAdd, dstAdd);
+        this.seq = seq;
+        this.changedIds = changedIds;
+        this.changedDists = changedDists;
+        this.withdrawn = withdrawn;
+    }
+
+    /**
+     * Write a string representation of a DVDeltaMessage using the following
+     * format:
+     * "type[DLM]srcIP[DLM]srcPort[DLM]
+     * dstIP[DLM]dstPort[DLM]seq[DLM]changedDistanceVector[DLM]
+     * ip:port;ip:port ..."
+     *
+     * @param out The destination of the text
+     * @throws IOException If out cannot be written to
+     */
+    @Override
+    public void writeTo(Appendable out) throws IOException {
+        super.writeTo(out);
+        out.append(Integer.toString(seq)).append(DLM);
+        for (int i = 0; i < changedIds.length; i++) {
+            if (i > 0) {
+                out.append(';');
+            }
+            Address a = AddressTable.get(changedIds[i]);
+            out.append(a.ip).append(':').append(Integer.toString(a.port))
+                    .append(':').append(Integer.toString(changedDists[i]));
+        }
+        out.append(DLM);
+        for (int i = 0; i < withdrawn.size(); i++) {
+            if (i > 0) {
+                out.append(';');
+            }
+            Address a = withdrawn.get(i);
+            out.append(a.ip).append(':').append(Integer.toString(a.port));
+        }
+        out.append(DLM);
+    }
+
+    /**
+     * Getter for the sequence number
+     *
+     * @return the sequence number of this advertisement
+     */
+    int getSeq() {
+        return seq;
+    }
+
+    /**
+     * Get the number of changed entries
+     *
+     * @return the number of changed destinations
+     */
+    int changedCount() {
+        return changedIds.length;
+    }
+
+    /**
+     * Get the address id of a changed entry
+     *
+     * @param i The index of the entry
+     * @return the id of the destination
+     */
+    int changedId(int i) {
+        return changedIds[i];
+    }
+
+    /**
+     * Get the distance of a changed entry
+     *
+     * @param i The index of the entry
+     * @return the new distance to the destination
+     */
+    int changedDistance(int i) {
+        return changedDists[i];
+    }
+
+    /**
+     * Get a readable representation of the changed entries: one
+     * "ip:port dist" line per destination
+     *
+     * @return the lines, with no newline after the last one
+     */
+    String debugPrintChanged() {
+        StringBuilder result = new StringBuilder(changedIds.length * 24);
+        for (int i = 0; i < changedIds.length; i++) {
+            if (i > 0) {
+                result.append('\n');
+            }
+            result.append(AddressTable.get(changedIds[i])).append(' ').append(changedDists[i]);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Getter for the withdrawn destinations
+     *
+     * @return the destinations removed from the distance vector
+     */
+    List<Address> getWithdrawn() {
+        return withdrawn;
+    }
+}
@@ -1,5 +1,7 @@
 package dvroutingsimulator;
 
+import java.io.IOException;
+
 /**
  * A router control message that contains its distance vector.
  * This message should be used to advertise router's dist. vect.
@@ -9,6 +11,7 @@ package dvroutingsimulator;
 public class DVMessage extends Message {
 
     private DistanceVector dv;
+    private int seq; // sequence number of the advertisement, see DVDeltaMessage
 
     /**
      * Constructor for DVMessage
@@ -18,40 +21,38 @@ public class DVMessage extends Message {
      * @param distVect the distance vector of src router
      */
     public DVMessage(Address srcAdd, Address dstAdd, DistanceVector distVect) {
-        super(MsgType.DV, srcAdd.ip, srcAdd.port, dstAdd.ip, dstAdd.port);
-        this.dv = distVect;
+        this(srcAdd, dstAdd, distVect, 0);
     }
 
     /**
-     * Constructor that parses a string representation of a DVMessage Message's
-     * format: "type[DLM]srcIP[DLM]srcPort[DLM]
-     * dstIP[DLM]dstPort[DLM]distanceVector"
+     * Constructor for a DVMessage that starts a sequence of delta updates
      *
-     * @param text
+     * @param srcAdd IP and port of source router
+     * @param dstAdd IP and port of destination router
+     * @param distVect the distance vector of src router
+     * @param seq the sequence number of this advertisement to dstAdd
      */
-    public DVMessage(String text) {
-        super(text);
-        if (this.type != MsgType.DV) {
-            System.out.println("ERROR: Not a DV Type.");
-            return;
-        }
-        String[] fields = text.split(DLM);
-        this.dv = new DistanceVector(fields[5]);
+    DVMessage(Address srcAdd, Address dstAdd, DistanceVector distVect, int seq) {
+        super(MsgType.DV, srcAdd, dstAdd);
+        this.dv = distVect;
+        this.seq = seq;
     }
 
     /**
-     * Output a string representation of a DVMessage using the following format:
+     * Write a string representation of a DVMessage using the following format:
      * "type[DLM]srcIP[DLM]srcPort[DLM]
-     * dstIP[DLM]dstPort[DLM]distanceVector"
+     * dstIP[DLM]dstPort[DLM]distanceVector[DLM]seq"
      *
-     * @return a string representation of a DVMessage
+     * The seq field is optional when parsing, and defaults to 0.
+     *
+     * @param out The destination of the text
+     * @throws IOException If out cannot be written to
      */
     @Override
-    public String toString() {
-        String output = type + DLM + srcAdd.ip + DLM + srcAdd.port
-                + DLM + dstAdd.ip + DLM + dstAdd.port
-                + DLM + dv.toString() + DLM;
-        return output;
+    public void writeTo(Appendable out) throws IOException {
+        super.writeTo(out);
+        dv.writeTo(out);
+        out.append(DLM).append(Integer.toString(seq)).append(DLM);
     }
 
     /**
@@ -62,4 +63,13 @@ public class DVMessage extends Message {
     public DistanceVector getDistVect() {
         return dv;
     }
+
+    /**
+     * Getter for the sequence number
+     *
+     * @return the sequence number of this advertisement
+     */
+    int getSeq() {
+        return seq;
+    }
 }
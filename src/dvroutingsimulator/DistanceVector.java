@@ -1,19 +1,34 @@
 package dvroutingsimulator;
 
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Objects;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Create a distance vector for the DV Routing Simulator
+ * Create a distance vector for the DV Routing Simulator. Distances are kept by
+ * the address ids of AddressTable, in one of two forms: sorted parallel arrays
+ * of ids and distances while the vector is small next to its largest id, then
+ * an int array indexed by id once it is dense enough. Either way memory and
+ * iteration cost O(entries), not O(every address of the JVM).
+ *
+ * A vector is used by one thread at a time: the event loop of its router, or
+ * the thread decoding it before it is posted to that loop.
  *
  * @author hongha912
  */
 public class DistanceVector {
 
-    private Map<Address, Integer> dvMap;
+    static final int NONE = Integer.MIN_VALUE; //marks a destination with no distance
+
+    private static final int SPARSE_MIN = 16; // entries always kept sparse
+    private static final int DENSITY = 4;     // dense once 1 id in DENSITY has a distance
+
+    private int[] ids;  // sparse: the ids with a distance, sorted, in [0, size); null when dense
+    private int[] dist; // sparse: the distances of ids; dense: indexed by id, NONE when absent
+    private int size;
     private static final String INTER_DLM = ";"; //inter-vector delimiter
     private static final String INTRA_DLM = ":"; //intra-vector delimiter
 
@@ -21,7 +36,9 @@ public class DistanceVector {
      * Create a new distance vector
      */
     public DistanceVector() {
-        dvMap = new ConcurrentHashMap<>();
+        ids = new int[0];
+        dist = new int[0];
+        size = 0;
     }
 
     /**
@@ -36,48 +53,116 @@ public class DistanceVector {
      */
     public DistanceVector(String text) {
         this();
-        String[] vTexts = text.split(INTER_DLM);
-        for (String vText : vTexts) {
-            String[] vFields = vText.split(INTRA_DLM);
-            String ip = vFields[0];
-            int port = Integer.parseInt(vFields[1]);
-            int dist = Integer.parseInt(vFields[2]);
-            dvMap.put(new Address(ip, port), dist);
+        int pos = 0;
+        while (pos < text.length()) {
+            int end = text.indexOf(INTER_DLM, pos);
+            if (end < 0) {
+                end = text.length();
+            }
+            if (end > pos) {
+                int portAt = text.indexOf(INTRA_DLM, pos) + 1;
+                int distAt = text.indexOf(INTRA_DLM, portAt) + 1;
+                if (portAt == 0 || distAt == 0 || distAt > end) {
+                    throw new IllegalArgumentException("Wrong format. Bad distance vector entry.");
+                }
+                String ip = text.substring(pos, portAt - 1);
+                int port = Integer.parseInt(text.substring(portAt, distAt - 1));
+                int d = Integer.parseInt(text.substring(distAt, end));
+                updateDistance(Address.of(ip, port), d);
+            }
+            pos = end + INTER_DLM.length();
         }
-
     }
 
     /**
-     * This method returns a text representation of a DV 
+     * Write a text representation of a DV, in time linear in its size,
      * using the following format:
      * 
      * "ip[INTRA_DLM]port[INTRA_DLM]dist[INTER_DLM]
      * ip[INTRA_DLM]port[INTRA_DLM]dist[INTER_DLM]
      * ..."
+     *
+     * with no delimiter after the last entry
+     *
+     * @param out The destination of the text
+     * @throws IOException If out cannot be written to
+     */
+    public void writeTo(Appendable out) throws IOException {
+        writeTo(out, null, NONE);
+    }
+
+    /**
+     * Write a text representation of a DV with some of its entries poisoned,
+     * see writeTo(Appendable)
+     *
+     * @param out The destination of the text
+     * @param poisoned The ids of the poisoned destinations, null for none
+     * @param poison The distance written for the poisoned destinations, NONE
+     * to leave them out
+     * @throws IOException If out cannot be written to
+     */
+    void writeTo(Appendable out, BitSet poisoned, int poison) throws IOException {
+        boolean first = true;
+        for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+            int distance = poisoned != null && poisoned.get(id) ? poison : distance(id);
+            if (distance != NONE) {
+                Address a = AddressTable.get(id);
+                if (!first) {
+                    out.append(INTER_DLM);
+                }
+                first = false;
+                out.append(a.ip).append(INTRA_DLM).append(Integer.toString(a.port))
+                        .append(INTRA_DLM).append(Integer.toString(distance));
+            }
+        }
+    }
+
+    /**
+     * This method returns a text representation of a DV, see writeTo
      * 
      * @return a String that represents a DV
      */
     @Override
     public String toString() {
-        String result = "";
-        for (Address a : dvMap.keySet()) {
-            result += INTER_DLM + a.ip + INTRA_DLM + a.port + INTRA_DLM + dvMap.get(a);
+        StringBuilder result = new StringBuilder(size * 24);
+        try {
+            writeTo(result);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // a StringBuilder does not throw it
         }
-        if (result.length() > 0) {
-            result = result.substring(1);
-        }
-        return result;
+        return result.toString();
     }
-    
+
+    /**
+     * Get a readable representation of a DV: one "ip:port dist" line per
+     * destination
+     *
+     * @return the lines, with no newline after the last one
+     */
     public String debugPrint() {
-        String result = "";
-        for (Address a : dvMap.keySet()) {
-            result += "\n" + a.toString() + " " + dvMap.get(a);
-        }
-        if (result.length() > 0) {
-            result = result.substring(1);
+        return debugPrint(null, NONE);
+    }
+
+    /**
+     * Get a readable representation of a DV with some of its entries poisoned
+     *
+     * @param poisoned The ids of the poisoned destinations, null for none
+     * @param poison The distance printed for the poisoned destinations, NONE
+     * to leave them out
+     * @return the lines, with no newline after the last one
+     */
+    String debugPrint(BitSet poisoned, int poison) {
+        StringBuilder result = new StringBuilder(size * 24);
+        for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+            int distance = poisoned != null && poisoned.get(id) ? poison : distance(id);
+            if (distance != NONE) {
+                if (result.length() > 0) {
+                    result.append('\n');
+                }
+                result.append(AddressTable.get(id)).append(' ').append(distance);
+            }
         }
-        return result;
+        return result.toString();
     }
 
     /**
@@ -89,8 +174,16 @@ public class DistanceVector {
     @Override
     public boolean equals(Object o) {
         if (o instanceof DistanceVector) {
-            DistanceVector nDV = (DistanceVector) o;
-            return this.dvMap.equals(nDV.dvMap);
+            DistanceVector other = (DistanceVector) o;
+            if (size != other.size) {
+                return false;
+            }
+            for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+                if (distance(id) != other.distance(id)) {
+                    return false;
+                }
+            }
+            return true;
         }
         return false;
     }
@@ -102,7 +195,9 @@ public class DistanceVector {
     @Override
     public int hashCode() {
         int hash = 3;
-        hash = 47 * hash + Objects.hashCode(this.dvMap);
+        for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+            hash += 47 * id + distance(id);
+        }
         return hash;
     }
 
@@ -113,7 +208,60 @@ public class DistanceVector {
      * @param d The distance to be updated
      */
     public void updateDistance(Address a, Integer d) {
-        dvMap.put(a, d);
+        updateDistance(AddressTable.idOf(a), d);
+    }
+
+    /**
+     * Add/Update the distance for an address id
+     *
+     * @param id The id of the address to be updated
+     * @param d The distance to be updated
+     */
+    void updateDistance(int id, int d) {
+        if (ids == null) {
+            if (id >= dist.length) {
+                int length = dist.length;
+                dist = Arrays.copyOf(dist, Math.max(id + 1, length * 2));
+                Arrays.fill(dist, length, dist.length, NONE);
+            }
+            if (dist[id] == NONE) {
+                size++;
+            }
+            dist[id] = d;
+            return;
+        }
+        int i = Arrays.binarySearch(ids, 0, size, id);
+        if (i >= 0) {
+            dist[i] = d;
+            return;
+        }
+        i = -i - 1;
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(4, size * 2));
+            dist = Arrays.copyOf(dist, ids.length);
+        }
+        System.arraycopy(ids, i, ids, i + 1, size - i);
+        System.arraycopy(dist, i, dist, i + 1, size - i);
+        ids[i] = id;
+        dist[i] = d;
+        size++;
+        if (size > SPARSE_MIN && (long) size * DENSITY > ids[size - 1]) {
+            densify();
+        }
+    }
+
+    /**
+     * Switch to the array indexed by id, once most ids up to the largest one
+     * have a distance
+     */
+    private void densify() {
+        int[] dense = new int[ids[size - 1] + 1];
+        Arrays.fill(dense, NONE);
+        for (int i = 0; i < size; i++) {
+            dense[ids[i]] = dist[i];
+        }
+        ids = null;
+        dist = dense;
     }
 
     /**
@@ -123,7 +271,45 @@ public class DistanceVector {
      * @return The distance stored in distance vector, null if add not exist
      */
     public Integer getDistance(Address a) {
-        return dvMap.get(a);
+        int d = distance(AddressTable.idOf(a));
+        return d == NONE ? null : d;
+    }
+
+    /**
+     * Get the distance between router and an address id, without boxing
+     *
+     * @param id The id of the address
+     * @return The distance stored in distance vector, NONE if id not exist
+     */
+    int distance(int id) {
+        if (ids == null) {
+            return id < dist.length ? dist[id] : NONE;
+        }
+        int i = Arrays.binarySearch(ids, 0, size, id);
+        return i >= 0 ? dist[i] : NONE;
+    }
+
+    /**
+     * Get the id of the first destination at or after an id, to iterate over
+     * the vector with: for (id = nextId(0); id >= 0; id = nextId(id + 1))
+     *
+     * @param from The id to start from
+     * @return The next id with a distance, -1 if there is none
+     */
+    int nextId(int from) {
+        if (ids == null) {
+            for (int id = from; id < dist.length; id++) {
+                if (dist[id] != NONE) {
+                    return id;
+                }
+            }
+            return -1;
+        }
+        int i = Arrays.binarySearch(ids, 0, size, from);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return i < size ? ids[i] : -1;
     }
 
     /**
@@ -132,25 +318,59 @@ public class DistanceVector {
      * @return The set of address
      */
     public Set<Address> addressSet() {
-        return dvMap.keySet();
+        Set<Address> result = new HashSet<>();
+        for (int id = nextId(0); id >= 0; id = nextId(id + 1)) {
+            result.add(AddressTable.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of destinations in the vector
+     *
+     * @return The number of destinations
+     */
+    int size() {
+        return size;
     }
 
     /**
      * Remove a router's address in the dv
      */
     void removeDistance(Address destAdd) {
-        dvMap.remove(destAdd);
+        removeDistance(AddressTable.idOf(destAdd));
+    }
+
+    /**
+     * Remove a router's address id in the dv
+     */
+    void removeDistance(int id) {
+        if (ids == null) {
+            if (id < dist.length && dist[id] != NONE) {
+                dist[id] = NONE;
+                size--;
+            }
+            return;
+        }
+        int i = Arrays.binarySearch(ids, 0, size, id);
+        if (i >= 0) {
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            System.arraycopy(dist, i + 1, dist, i, size - i - 1);
+            size--;
+        }
     }
     
     DistanceVector deepCopy() {
         DistanceVector newDV = new DistanceVector();
-        for (Entry<Address, Integer> s: dvMap.entrySet()) {
-            newDV.dvMap.put(s.getKey().deepClone(), s.getValue());
-        }
+        newDV.ids = ids == null ? null : ids.clone();
+        newDV.dist = dist.clone();
+        newDV.size = size;
         return newDV;
     }
 
     void clear() {
-        dvMap.clear();
+        ids = new int[0];
+        dist = new int[0];
+        size = 0;
     }
 }
@@ -0,0 +1,293 @@
+package dvroutingsimulator;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The event log of the routers. Logging a record only puts it in a bounded
+ * lock-free queue, a background thread writes the records to the sink, so the
+ * routers never wait for the console nor for each other. The queue is a
+ * ConcurrentLinkedQueue bounded by an atomic count of the records it holds;
+ * the writer parks when it is empty and the first record logged after that
+ * wakes it up. Records below the level of the log are not even built when the
+ * caller checks isEnabled first, and records that do not fit in the buffer
+ * are dropped and counted.
+ *
+ * @author thanhvu
+ */
+final class EventLog {
+
+    /**
+     * The levels of the records, from the most to the least important
+     */
+    enum Level {
+        OFF, ERROR, WARN, INFO, DEBUG
+    }
+
+    /**
+     * Writes the records taken from the buffer
+     */
+    interface Sink {
+
+        /**
+         * Write a record
+         *
+         * @param level The level of the record
+         * @param time The wall-clock time the record was logged, in
+         * milliseconds
+         * @param text The text of the record
+         */
+        void write(Level level, long time, String text);
+
+        /**
+         * Called after every batch of records written
+         */
+        void flush();
+    }
+
+    /**
+     * Prints the text of the records to System.out, as looked up at each
+     * write
+     */
+    static final Sink CONSOLE = new Sink() {
+        @Override
+        public void write(Level level, long time, String text) {
+            System.out.println(text);
+        }
+
+        @Override
+        public void flush() {
+            System.out.flush();
+        }
+    };
+
+    private static final int CAPACITY = 8192;
+    private static final int BATCH = 256;
+    private static EventLog shared;
+
+    private final Queue<Record> queue;
+    private final AtomicInteger queued;
+    private final int capacity;
+    private final AtomicLong accepted;
+    private final AtomicLong dropped;
+    private volatile Level level;
+    private volatile Sink sink;
+    private volatile long written;
+    private volatile Thread writer;    // started by the first record
+    private volatile boolean parked;   // the writer is about to park or parked
+
+    /**
+     * Get the log shared by all the routers of the JVM
+     *
+     * @return The shared log
+     */
+    static synchronized EventLog shared() {
+        if (shared == null) {
+            shared = new EventLog(Level.DEBUG, CONSOLE, CAPACITY);
+        }
+        return shared;
+    }
+
+    /**
+     * Create a log
+     *
+     * @param level The least important level recorded
+     * @param sink The sink the records are written to
+     * @param capacity The number of records buffered at most
+     */
+    EventLog(Level level, Sink sink, int capacity) {
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.queued = new AtomicInteger();
+        this.capacity = capacity;
+        this.accepted = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.level = level;
+        this.sink = sink;
+        this.written = 0;
+    }
+
+    /**
+     * Set the least important level recorded, OFF to record nothing
+     *
+     * @param level The level
+     */
+    void setLevel(Level level) {
+        this.level = level;
+    }
+
+    /**
+     * Replace the sink the records are written to
+     *
+     * @param sink The sink
+     */
+    void setSink(Sink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Check if records of a level are recorded, to skip building their text
+     *
+     * @param l The level
+     * @return true if log(l, ...) records
+     */
+    boolean isEnabled(Level l) {
+        return l != Level.OFF && l.compareTo(level) <= 0;
+    }
+
+    /**
+     * Check if debug records are recorded
+     *
+     * @return true if debug records are recorded
+     */
+    boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    /**
+     * Record a line of text
+     *
+     * @param l The level of the record
+     * @param text The text
+     */
+    void log(Level l, String text) {
+        if (!isEnabled(l)) {
+            return;
+        }
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.offer(new Record(l, System.currentTimeMillis(), text));
+        accepted.incrementAndGet();
+        Thread w = writer;
+        if (w == null) {
+            startWriter(); // only the first records take the lock
+        } else if (parked) {
+            parked = false;
+            LockSupport.unpark(w);
+        }
+    }
+
+    /**
+     * Record a line of text at ERROR level
+     *
+     * @param text The text
+     */
+    void error(String text) {
+        log(Level.ERROR, text);
+    }
+
+    /**
+     * Record a line of text at WARN level
+     *
+     * @param text The text
+     */
+    void warn(String text) {
+        log(Level.WARN, text);
+    }
+
+    /**
+     * Record a line of text at INFO level
+     *
+     * @param text The text
+     */
+    void info(String text) {
+        log(Level.INFO, text);
+    }
+
+    /**
+     * Record a line of text at DEBUG level
+     *
+     * @param text The text
+     */
+    void debug(String text) {
+        log(Level.DEBUG, text);
+    }
+
+    /**
+     * Wait until every record logged so far is written, or a timeout passed
+     *
+     * @param timeout The longest wait, in milliseconds
+     */
+    void flush(long timeout) {
+        long target = accepted.get();
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (this) {
+            while (written < target && writer != null) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    return;
+                }
+                try {
+                    wait(left);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private synchronized void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void write() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Record r = queue.poll();
+            if (r == null) {
+                // a record logged after parked is set sees it and unparks
+                parked = true;
+                if (queue.isEmpty()) {
+                    LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+                }
+                parked = false;
+                continue;
+            }
+            Sink s = sink;
+            int count = 0;
+            do {
+                s.write(r.level, r.time, r.text);
+                count++;
+            } while (count < BATCH && (r = queue.poll()) != null);
+            queued.addAndGet(-count);
+            long lost = dropped.getAndSet(0);
+            if (lost > 0) {
+                s.write(Level.WARN, System.currentTimeMillis(), lost + " log records dropped, buffer full");
+            }
+            s.flush();
+            synchronized (this) {
+                written += count;
+                notifyAll();
+            }
+        }
+    }
+
+    private static final class Record {
+
+        private final Level level;
+        private final long time;
+        private final String text;
+
+        Record(Level level, long time, String text) {
+            this.level = level;
+            this.time = time;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package dvroutingsimulator;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the events of a router one at a time, in the order they were posted.
+ * Any thread can post: received packets, timer expiries and console commands
+ * all go through the same multi-producer queue, and only the loop touches the
+ * state of the router, so that state needs no lock.
+ *
+ * The queue is drained on an underlying executor: a thread of its own, a
+ * pool shared with other loops, or the caller's thread in a simulation. At
+ * most one drain runs at a time.
+ *
+ * @author thanhvu
+ */
+class EventLoop implements Executor {
+
+    private static final int BATCH = 64; // events run before yielding a shared executor
+
+    private final Queue<Runnable> events;
+    private final AtomicBoolean draining;
+    private final Executor executor;
+    private final ExecutorService owned;
+    private final Runnable drain;
+
+    /**
+     * Create a loop running on a thread of its own
+     *
+     * @param name The name of the thread
+     */
+    EventLoop(final String name) {
+        this(new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, name);
+            }
+        }), true);
+    }
+
+    /**
+     * Create a loop draining on an executor. A direct executor runs each event
+     * on the thread posting it, unless an event is already running there.
+     *
+     * @param executor The executor the loop runs on
+     */
+    EventLoop(Executor executor) {
+        this(executor, false);
+    }
+
+    private EventLoop(Executor executor, boolean owned) {
+        this.events = new ConcurrentLinkedQueue<>();
+        this.draining = new AtomicBoolean(false);
+        this.executor = executor;
+        this.owned = owned ? (ExecutorService) executor : null;
+        this.drain = new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+    }
+
+    /**
+     * Post an event, run after all the events posted before it
+     *
+     * @param event The event
+     */
+    @Override
+    public void execute(Runnable event) {
+        events.offer(event);
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(drain);
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < BATCH; i++) {
+            Runnable event = events.poll();
+            if (event == null) {
+                break;
+            }
+            try {
+                event.run();
+            } catch (RuntimeException ex) {
+                Logger.getLogger(EventLoop.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        draining.set(false);
+        // an event posted after the last poll found draining still set
+        if (!events.isEmpty() && draining.compareAndSet(false, true)) {
+            executor.execute(drain);
+        }
+    }
+
+    /**
+     * Wrap a scheduler so that the tasks it runs are posted to this loop
+     *
+     * @param scheduler The scheduler keeping the time
+     * @return A scheduler running its tasks on the loop, whose shutdown leaves
+     * the wrapped scheduler running
+     */
+    Scheduler bind(final Scheduler scheduler) {
+        return new Scheduler() {
+            @Override
+            public long now() {
+                return scheduler.now();
+            }
+
+            @Override
+            public Cancellable schedule(Runnable task, long delay) {
+                return scheduler.schedule(post(task), delay);
+            }
+
+            @Override
+            public Cancellable scheduleAtFixedRate(Runnable task, long delay, long period) {
+                return scheduler.scheduleAtFixedRate(post(task), delay, period);
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+    }
+
+    private Runnable post(final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                execute(task);
+            }
+        };
+    }
+
+    /**
+     * Stop the thread of the loop, if it has one. Events not run yet are
+     * dropped.
+     */
+    void shutdown() {
+        events.clear();
+        if (owned != null) {
+            owned.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package dvroutingsimulator;
+
+/**
+ * An immutable snapshot of the forwarding table of a router: the next hop of
+ * every destination, in an array indexed by the id of the destination in the
+ * AddressTable. The router builds a new snapshot after each route computation
+ * and publishes it at once, so a lookup never sees a table half rebuilt and
+ * takes no lock. With equal-cost multipath, the destinations reachable
+ * through several next hops at the same cost also have the set of them, and
+ * each flow is pinned to one of them by its hash.
+ *
+ * @author thanhvu
+ */
+final class ForwardingTable {
+
+    static final ForwardingTable EMPTY = new ForwardingTable(new Neighbor[0], null);
+
+    private final Neighbor[] hops;
+    private final Neighbor[][] multipath;
+
+    /**
+     * Create a snapshot
+     *
+     * @param hops The next hops indexed by destination id, null for the
+     * unreachable destinations. Not modified after this call.
+     * @param multipath The equal-cost next hops indexed by destination id,
+     * null for the destinations with a single one, or null without
+     * multipath. Not modified after this call.
+     */
+    ForwardingTable(Neighbor[] hops, Neighbor[][] multipath) {
+        this.hops = hops;
+        this.multipath = multipath;
+    }
+
+    /**
+     * Look up the next hop to a destination
+     *
+     * @param destAdd The destination
+     * @return The neighbor to forward to, null if the destination is not
+     * reachable
+     */
+    Neighbor nextHop(Address destAdd) {
+        return nextHop(destAdd.id);
+    }
+
+    /**
+     * Look up the next hop to a destination
+     *
+     * @param destId The id of the destination
+     * @return The neighbor to forward to, null if the destination is not
+     * reachable
+     */
+    Neighbor nextHop(int destId) {
+        return destId < hops.length ? hops[destId] : null;
+    }
+
+    /**
+     * Check if a destination has several next hops to spread flows across
+     *
+     * @param destId The id of the destination
+     * @return true if the next hop depends on the flow
+     */
+    boolean isMultipath(int destId) {
+        return multipath != null && destId < multipath.length && multipath[destId] != null;
+    }
+
+    /**
+     * Look up the next hop of a flow to a destination: one of the equal-cost
+     * next hops chosen by the hash of the flow, always the same one for the
+     * same hash as long as the set does not change
+     *
+     * @param destId The id of the destination
+     * @param flow The hash of the flow
+     * @return The neighbor to forward to, null if the destination is not
+     * reachable
+     */
+    Neighbor nextHop(int destId, int flow) {
+        if (!isMultipath(destId)) {
+            return nextHop(destId);
+        }
+        Neighbor[] set = multipath[destId];
+        // spread the bits of the hash, so close hashes pick different hops
+        int h = flow * 0x9E3779B9;
+        h ^= h >>> 16;
+        return set[(h & 0x7FFFFFFF) % set.length];
+    }
+}
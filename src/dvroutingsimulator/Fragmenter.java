@@ -0,0 +1,82 @@
+package dvroutingsimulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Split encoded messages larger than the datagram size into fragments.
+ * A fragment is a datagram made of:
+ *
+ * magic(1) messageId(8) index(2) count(2) chunk
+ *
+ * where the chunks of all the fragments of a message, in index order, are the
+ * bytes of the encoded message. The magic byte is neither the start of a text
+ * message nor the version of the binary format.
+ *
+ * @author thanhvu
+ */
+final class Fragmenter {
+
+    static final byte MAGIC = (byte) 0x82;
+    static final int HEADER_SIZE = 13;
+    static final int MAX_FRAGMENTS = 0xFFFF;
+
+    private Fragmenter() {
+    }
+
+    /**
+     * Check if a packet is a fragment
+     *
+     * @param packet The received packet
+     * @return true if the packet is a fragment of a larger message
+     */
+    static boolean isFragment(ByteBuffer packet) {
+        return packet.hasRemaining() && packet.get(packet.position()) == MAGIC;
+    }
+
+    /**
+     * Send an encoded message to a neighbor, in fragments of at most
+     * datagramSize bytes if it does not fit in one datagram
+     *
+     * @param message The encoded message, between position and limit
+     * @param datagramSize The largest datagram to send
+     * @param messageId An id not used by the other recent messages of the router
+     * @param transport The transport to send with
+     * @param dst The neighbor to send to
+     * @param buffers The pool to take the fragment buffers from
+     * @return The bytes of the datagrams sent, fragment headers included
+     * @throws IOException If a fragment cannot be sent
+     */
+    static int send(ByteBuffer message, int datagramSize, long messageId,
+            Transport transport, Neighbor dst, BufferPool buffers) throws IOException {
+        if (message.remaining() <= datagramSize) {
+            int size = message.remaining();
+            transport.send(message, dst);
+            return size;
+        }
+        int chunkSize = datagramSize - HEADER_SIZE;
+        int count = (message.remaining() + chunkSize - 1) / chunkSize;
+        if (count > MAX_FRAGMENTS) {
+            throw new IOException("message of " + message.remaining() + " bytes needs more than "
+                    + MAX_FRAGMENTS + " fragments");
+        }
+        int sent = 0;
+        ByteBuffer fragment = buffers.acquire();
+        try {
+            int end = message.limit();
+            for (int i = 0; i < count; i++) {
+                fragment.clear();
+                fragment.put(MAGIC).putLong(messageId).putShort((short) i).putShort((short) count);
+                message.limit(Math.min(end, message.position() + chunkSize));
+                fragment.put(message);
+                message.limit(end);
+                fragment.flip();
+                sent += fragment.remaining();
+                transport.send(fragment, dst);
+            }
+        } finally {
+            buffers.release(fragment);
+        }
+        return sent;
+    }
+}
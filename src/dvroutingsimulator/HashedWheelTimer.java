@@ -0,0 +1,174 @@
+package dvroutingsimulator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scheduler on the wall clock backed by a hashed timing wheel: one thread
+ * advances the wheel every tick and runs the tasks whose bucket it reaches.
+ * Scheduling and cancelling are O(1) and create no thread, so every router
+ * of a JVM shares the same wheel.
+ *
+ * @author thanhvu
+ */
+class HashedWheelTimer implements Scheduler {
+
+    private static HashedWheelTimer shared;
+
+    private final long tickMs;
+    private final List<List<Timeout>> wheel;
+    private final Queue<Timeout> pending;
+    private final long start;
+    private final Thread worker;
+    private volatile boolean running;
+    private long tick;
+
+    /**
+     * Get the wheel shared by all the routers of the JVM, started on first use
+     *
+     * @return The shared wheel
+     */
+    static synchronized HashedWheelTimer shared() {
+        if (shared == null) {
+            shared = new HashedWheelTimer(10, 512);
+        }
+        return shared;
+    }
+
+    /**
+     * Create a wheel and start its thread
+     *
+     * @param tickMs The duration of a tick, the precision of the timer
+     * @param buckets The number of buckets, rounded up to a power of 2
+     */
+    HashedWheelTimer(long tickMs, int buckets) {
+        int size = Integer.highestOneBit(Math.max(1, buckets - 1)) << 1;
+        this.tickMs = tickMs;
+        this.wheel = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            wheel.add(new ArrayList<Timeout>());
+        }
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.start = System.currentTimeMillis();
+        this.tick = 0;
+        this.running = true;
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "hashed-wheel-timer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public long now() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public Cancellable schedule(Runnable task, long delay) {
+        return scheduleAtFixedRate(task, delay, 0);
+    }
+
+    @Override
+    public Cancellable scheduleAtFixedRate(Runnable task, long delay, long period) {
+        Timeout t = new Timeout(task, now() + Math.max(0, delay), period);
+        pending.add(t);
+        return t;
+    }
+
+    /**
+     * Stop the thread of the wheel, pending tasks never run
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void work() {
+        int mask = wheel.size() - 1;
+        while (running) {
+            long sleep = start + (tick + 1) * tickMs - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException ex) {
+                    continue;
+                }
+            }
+            transferPending(mask);
+            List<Timeout> bucket = wheel.get((int) (tick & mask));
+            List<Timeout> expired = new ArrayList<>();
+            for (Iterator<Timeout> it = bucket.iterator(); it.hasNext();) {
+                Timeout t = it.next();
+                if (t.cancelled) {
+                    it.remove();
+                } else if (t.rounds > 0) {
+                    t.rounds--;
+                } else {
+                    it.remove();
+                    expired.add(t);
+                }
+            }
+            tick++;
+            for (Timeout t : expired) {
+                t.expire();
+            }
+        }
+    }
+
+    /**
+     * Move the newly scheduled tasks into their bucket
+     */
+    private void transferPending(int mask) {
+        Timeout t;
+        while ((t = pending.poll()) != null) {
+            if (t.cancelled) {
+                continue;
+            }
+            long due = Math.max((t.deadline - start) / tickMs, tick);
+            t.rounds = (due - tick) / wheel.size();
+            wheel.get((int) (due & mask)).add(t);
+        }
+    }
+
+    private class Timeout implements Cancellable {
+
+        private final Runnable task;
+        private final long period;
+        private long deadline;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        Timeout(Runnable task, long deadline, long period) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        void expire() {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                Logger.getLogger(HashedWheelTimer.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            if (period > 0 && !cancelled) {
+                deadline += period;
+                pending.add(this);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
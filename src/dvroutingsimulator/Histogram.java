@@ -0,0 +1,98 @@
+package dvroutingsimulator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of non-negative values, in power of 2 buckets:
+ * bucket i counts the values v with 2^(i-1) <= v < 2^i, bucket 0 counts 0.
+ * Recording is a few atomic increments, percentiles are upper bounds of
+ * their bucket.
+ *
+ * @author thanhvu
+ */
+class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    /**
+     * Create an empty histogram
+     */
+    Histogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Record a value
+     *
+     * @param value The value, negative values are recorded as 0
+     */
+    void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        long m = max.get();
+        while (v > m && !max.compareAndSet(m, v)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Get the number of values recorded
+     *
+     * @return The number of values
+     */
+    long count() {
+        return count.get();
+    }
+
+    /**
+     * Get the sum of the values recorded
+     *
+     * @return The sum
+     */
+    long sum() {
+        return sum.get();
+    }
+
+    /**
+     * Get the largest value recorded
+     *
+     * @return The largest value, 0 if none
+     */
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * Get an upper bound of a percentile of the values recorded
+     *
+     * @param p The percentile, between 0 and 100
+     * @return The upper bound of the bucket holding the percentile, capped by
+     * the largest value, 0 if none
+     */
+    long percentile(double p) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * p / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+            }
+        }
+        return max.get();
+    }
+}
@@ -0,0 +1,96 @@
+package dvroutingsimulator;
+
+/**
+ * Detect neighbors that stopped advertising. Each neighbor has a deadline,
+ * refreshed in O(1) every time it is heard from; a single timer per neighbor
+ * checks the deadline when it fires and only reports the neighbor as expired
+ * if the deadline really passed, so refreshing never touches the scheduler.
+ *
+ * @author thanhvu
+ */
+class LivenessMonitor {
+
+    /**
+     * Receives the neighbors that expired
+     */
+    interface Listener {
+
+        /**
+         * Called once when a neighbor was not heard from within the timeout
+         *
+         * @param n The expired neighbor
+         */
+        void expired(Neighbor n);
+    }
+
+    private final Scheduler scheduler;
+    private final long timeout;
+    private final Listener listener;
+
+    /**
+     * Create a monitor
+     *
+     * @param scheduler The scheduler the checks run on
+     * @param timeout The time without news after which a neighbor expires, in
+     * milliseconds
+     * @param listener The receiver of the expiry events
+     */
+    LivenessMonitor(Scheduler scheduler, long timeout, Listener listener) {
+        this.scheduler = scheduler;
+        this.timeout = timeout;
+        this.listener = listener;
+    }
+
+    /**
+     * Push the deadline of a neighbor to timeout from now, starting to watch
+     * it if it is not watched yet
+     *
+     * @param n The neighbor heard from
+     */
+    void refresh(Neighbor n) {
+        synchronized (n) {
+            n.deadline = scheduler.now() + timeout;
+            if (n.livenessCheck == null) {
+                arm(n, timeout);
+            }
+        }
+    }
+
+    /**
+     * Stop watching a neighbor
+     *
+     * @param n The neighbor
+     */
+    void stop(Neighbor n) {
+        synchronized (n) {
+            if (n.livenessCheck != null) {
+                n.livenessCheck.cancel();
+                n.livenessCheck = null;
+            }
+        }
+    }
+
+    private void arm(final Neighbor n, long delay) {
+        n.livenessCheck = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                check(n);
+            }
+        }, delay);
+    }
+
+    private void check(Neighbor n) {
+        synchronized (n) {
+            if (n.livenessCheck == null) {
+                return; // stopped while the check was due
+            }
+            long left = n.deadline - scheduler.now();
+            if (left > 0) {
+                arm(n, left);
+                return;
+            }
+            n.livenessCheck = null;
+        }
+        listener.expired(n);
+    }
+}
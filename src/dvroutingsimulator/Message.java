@@ -1,14 +1,17 @@
 package dvroutingsimulator;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 /**
  * A message sent between routers,
- * can one of the three types: distance vector message,
- * weight message, and content message
+ * can one of the four types: distance vector message,
+ * weight message, content message, and distance vector delta message
  * 
  * @author thanhvu
  */
 enum MsgType {
-    DV, WEIGHT, CONTENT
+    DV, WEIGHT, CONTENT, DVDELTA
 }
 
 public class Message {
@@ -29,36 +32,21 @@ public class Message {
      */
     protected Message(MsgType msgType, String srcip, int srcport, String dstip, int dstport) {
         this.type = msgType;
-        this.srcAdd = new Address(srcip, srcport);
-        this.dstAdd = new Address(dstip, dstport);
+        this.srcAdd = Address.of(srcip, srcport);
+        this.dstAdd = Address.of(dstip, dstport);
     }
 
     /**
-     * Constructor that parse a string representation of a message 
-     * and create a Message object
+     * Constructor for Message from already interned addresses
      * 
-     * @param text the string to parse
-     * Text format: type[DLM]srcIP[DLM]srcPort[DLM]dstIP[DLM]dstPort[DLM]
-     * After the last [DLM] are any other fields specific to each type of msg
+     * @param msgType Type of the message, DV, WEIGHT, or CONTENT
+     * @param src address of source router
+     * @param dst address of destination router
      */
-    protected Message(String text) {
-        String[] fields = text.split(DLM);
-
-        if (fields.length < 6) {
-            System.out.println("ERROR: Wrong format. Not enough fields.");
-            return;
-        }
-
-        try {
-            this.type = MsgType.valueOf(fields[0]);
-        } catch (IllegalArgumentException e) {
-            System.out.println("ERROR: Wrong type. Not a Message.");
-            return;
-        }
-
-        this.srcAdd = new Address(fields[1], Integer.parseInt(fields[2]));
-        this.dstAdd = new Address(fields[3], Integer.parseInt(fields[4]));
-
+    protected Message(MsgType msgType, Address src, Address dst) {
+        this.type = msgType;
+        this.srcAdd = src;
+        this.dstAdd = dst;
     }
 
     /**
@@ -87,25 +75,50 @@ public class Message {
     MsgType getType() {
         return type;
     }
-    
+
+    /**
+     * Write the text representation of the message, in time linear in its
+     * size. The format starts with the fields common to every message:
+     * "type[DLM]srcIP[DLM]srcPort[DLM]dstIP[DLM]dstPort[DLM]"
+     * followed by the fields specific to each type of msg.
+     *
+     * @param out The destination of the text
+     * @throws IOException If out cannot be written to
+     */
+    public void writeTo(Appendable out) throws IOException {
+        out.append(type.name()).append(DLM)
+                .append(srcAdd.ip).append(DLM).append(Integer.toString(srcAdd.port)).append(DLM)
+                .append(dstAdd.ip).append(DLM).append(Integer.toString(dstAdd.port)).append(DLM);
+    }
+
     /**
-     * Static method to detect the type of message
-     * 
-     * @param text The string representation of the message
-     * @return the msg type
+     * Write the text representation of the message, encoded in UTF-8, straight
+     * into a buffer
+     *
+     * @param out The buffer, written from its position
+     * @throws java.nio.BufferOverflowException If the message does not fit
      */
-    public static MsgType getType(String text) {
-        String[] fields = text.split(DLM);
-        
-        if (fields.length < 1) {
-            return null;
+    public void writeTo(ByteBuffer out) {
+        try {
+            writeTo(new ByteBufferAppender(out));
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // a ByteBufferAppender does not throw it
         }
+    }
 
+    /**
+     * Output the text representation of the message, see writeTo
+     *
+     * @return a string representation of the message
+     */
+    @Override
+    public String toString() {
+        StringBuilder output = new StringBuilder();
         try {
-            return MsgType.valueOf(fields[0]);
-        } catch (IllegalArgumentException e) {
-            return null;
+            writeTo(output);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // a StringBuilder does not throw it
         }
-
+        return output.toString();
     }
 }
@@ -0,0 +1,123 @@
+package dvroutingsimulator;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * Convert messages to and from the bytes sent between routers. Two wire
+ * formats exist: the original text format, and a compact binary format.
+ * Receivers accept both, the format of outgoing messages is configurable.
+ *
+ * @author thanhvu
+ */
+abstract class MessageCodec {
+
+    static final MessageCodec TEXT = new TextCodec();
+    static final MessageCodec BINARY = new BinaryCodec();
+
+    /**
+     * Write a message into a buffer, starting at the buffer's position
+     *
+     * @param m The message to encode
+     * @param out The buffer to write to, its position is moved past the message
+     * @throws java.nio.BufferOverflowException if the message does not fit
+     */
+    abstract void encode(Message m, ByteBuffer out);
+
+    /**
+     * Write the distance vector of a DV message: the part of the message that
+     * is the same for every neighbor, so a round encodes it only once
+     *
+     * @param dv The distance vector
+     * @param poisoned The ids of the poisoned destinations, such as the ones
+     * hidden by poison reverse, null for none
+     * @param poison The distance written for the poisoned destinations, NONE
+     * to leave them out
+     * @param out The buffer to write to
+     * @throws java.nio.BufferOverflowException if the vector does not fit
+     */
+    abstract void encodeVector(DistanceVector dv, BitSet poisoned, int poison, ByteBuffer out);
+
+    /**
+     * Write a DV message around a vector written by encodeVector. The result
+     * is the same as encoding the DVMessage.
+     *
+     * @param src The address of the sender
+     * @param dst The address of the neighbor
+     * @param seq The sequence number of the advertisement to that neighbor
+     * @param vector The encoded vector, between position and limit, left
+     * unchanged
+     * @param out The buffer to write to
+     * @throws java.nio.BufferOverflowException if the message does not fit
+     */
+    abstract void encodeDV(Address src, Address dst, int seq, ByteBuffer vector, ByteBuffer out);
+
+    /**
+     * Read the destination of a content message from its header only
+     *
+     * @param in The buffer holding exactly one encoded message, left
+     * unchanged
+     * @return The destination, null if the message is not a content message
+     * @throws IllegalArgumentException if the header is not valid
+     */
+    abstract Address contentDestination(ByteBuffer in);
+
+    /**
+     * Get the hash of the flow of a content message from its bytes, the same
+     * as ContentMessage.flowHash() of the decoded message
+     *
+     * @param in The buffer holding exactly one encoded content message, left
+     * unchanged
+     * @return The hash of the flow
+     * @throws IllegalArgumentException if the message is not valid
+     */
+    abstract int contentFlow(ByteBuffer in);
+
+    /**
+     * Forward a content message without decoding it: its time to live is
+     * decremented and the forwarding router appended to its path, the rest of
+     * the bytes are copied as they are. The message is patched in place when
+     * the buffer has room for it, copied to spare otherwise.
+     *
+     * @param in The buffer holding exactly one encoded content message
+     * @param hop The address of the forwarding router
+     * @param spare A buffer the message can be copied to
+     * @return The buffer holding the forwarded message between its position
+     * and limit, null if the message is out of time to live or cannot be
+     * forwarded this way, in which case in is left unchanged
+     */
+    abstract ByteBuffer forwardContent(ByteBuffer in, Address hop, ByteBuffer spare);
+
+    /**
+     * Read one message from the remaining bytes of a buffer
+     *
+     * @param in The buffer holding exactly one encoded message
+     * @return The decoded message
+     * @throws IllegalArgumentException if the bytes are not a valid message
+     */
+    abstract Message decode(ByteBuffer in);
+
+    /**
+     * Decode a message in whichever wire format it was sent
+     *
+     * @param in The buffer holding exactly one encoded message
+     * @return The decoded message
+     * @throws IllegalArgumentException if the bytes are not a valid message
+     */
+    static Message decodeAny(ByteBuffer in) {
+        return forPacket(in).decode(in);
+    }
+
+    /**
+     * Detect the wire format of a packet from its first byte
+     *
+     * @param in The buffer holding an encoded message
+     * @return The codec able to decode it
+     */
+    static MessageCodec forPacket(ByteBuffer in) {
+        if (in.hasRemaining() && in.get(in.position()) == BinaryCodec.VERSION) {
+            return BINARY;
+        }
+        return TEXT;
+    }
+}
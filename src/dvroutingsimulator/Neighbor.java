@@ -1,22 +1,35 @@
 package dvroutingsimulator;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.net.InetSocketAddress;
+import java.util.BitSet;
 
 /**
  * Create a class to contain neighbor router, bundling neighbor information
- * together
+ * together. Apart from its liveness state, a neighbor is only used by the
+ * event loop of its router, so it needs no lock.
  */
 class Neighbor {
 
     private Address a;
+    private InetSocketAddress socketAddress;
     private DistanceVector dv;
     private int w;
-    private Timer timer;
-    private static final int n = 3;
-    private final long t = AutoUpdater.T;
+
+    // sequence numbers of the advertisements exchanged with this neighbor
+    private int sentSeq;        // last advertisement sent to it
+    private boolean fullSent;   // a full DV was sent since the neighbor went live
+    private int recvSeq;        // last advertisement applied from it
+    private boolean inSync;     // dv is a full DV plus every delta sent after it
     private final Router r;
 
+    // ids of the destinations routed through this neighbor, maintained by the
+    // event loop of the router along with its forward table
+    final BitSet served = new BitSet();
+
+    // liveness state, guarded by this neighbor, see LivenessMonitor
+    long deadline;
+    Scheduler.Cancellable livenessCheck;
+
     /**
      * Create a neighbor
      *
@@ -28,32 +41,22 @@ class Neighbor {
         this.a = a;
         this.w = weight;
         dv = new DistanceVector();
-        timer = new Timer();
         restartTimer();
     }
 
     /**
-     * Restart the timer if it's already started. The task is a drop neighbor
-     * task
+     * Restart the timer every time the neighbor is heard from. When it runs
+     * out, the router drops the neighbor.
      */
     final void restartTimer() {
-        timer.cancel();
-        timer = new Timer();
-        //this task drop the neighbor from the current router that it's contained in
-        TimerTask dropNeighborTask = new TimerTask() {
-            @Override
-            public void run() {
-                r.dropNeighbor(a);
-            }
-        };
-        timer.schedule(dropNeighborTask, n * t * 1000);
+        r.getLiveness().refresh(this);
     }
 
     /**
      * Stop the timer
      */
     void stopTimer() {
-        timer.cancel();
+        r.getLiveness().stop(this);
     }
 
     /**
@@ -74,6 +77,65 @@ class Neighbor {
         this.dv = dv;
     }
 
+    /**
+     * Get the sequence number of the next advertisement sent to this neighbor
+     *
+     * @param full true if the advertisement is a full DV
+     * @return the next sequence number
+     */
+    int nextSentSeq(boolean full) {
+        if (full) {
+            fullSent = true;
+        }
+        return ++sentSeq;
+    }
+
+    /**
+     * Check if this neighbor can be sent a delta, which is only the case once
+     * it got a full DV to apply it on
+     *
+     * @return true if a full DV was sent since the neighbor went live
+     */
+    boolean acceptsDeltas() {
+        return fullSent;
+    }
+
+    /**
+     * Record that a full DV was received from this neighbor
+     *
+     * @param seq The sequence number of the full DV
+     */
+    void syncedTo(int seq) {
+        recvSeq = seq;
+        inSync = true;
+    }
+
+    /**
+     * Check if a delta received from this neighbor directly follows the last
+     * applied advertisement, and record it if so. A gap puts the neighbor out
+     * of sync until its next full DV.
+     *
+     * @param seq The sequence number of the delta
+     * @return true if the delta can be applied on the stored DV
+     */
+    boolean acceptDelta(int seq) {
+        if (inSync && seq == recvSeq + 1) {
+            recvSeq = seq;
+            return true;
+        }
+        inSync = false;
+        return false;
+    }
+
+    /**
+     * Forget the advertisements exchanged with this neighbor, when it is
+     * dropped
+     */
+    void resetSeq() {
+        fullSent = false;
+        inSync = false;
+    }
+
     /**
      * Get the link weight between the router and this neighbor
      *
@@ -92,6 +154,18 @@ class Neighbor {
         this.w = weight;
     }
 
+    /**
+     * Get the socket address of this neighbor router, resolved on first use
+     *
+     * @return the resolved socket address of this neighbor router
+     */
+    InetSocketAddress getSocketAddress() {
+        if (socketAddress == null) {
+            socketAddress = new InetSocketAddress(a.ip, a.port);
+        }
+        return socketAddress;
+    }
+
     /**
      * Retrieve the address of this neighbor router
      *
@@ -0,0 +1,175 @@
+package dvroutingsimulator;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rebuild messages from the fragments made by Fragmenter. Messages are told
+ * apart by their sender and id, since ids are only unique per sender. Memory
+ * is bounded: incomplete messages are dropped when they are older than a
+ * timeout, or when too many messages or bytes are pending, oldest first.
+ *
+ * @author thanhvu
+ */
+class Reassembler {
+
+    private final Scheduler clock;
+    private final long timeout;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final Map<Key, Partial> pending;
+    private long pendingBytes;
+
+    /**
+     * Create a reassembler
+     *
+     * @param clock The scheduler whose clock times the fragments
+     * @param timeout The time to wait for the missing fragments of a message,
+     * in milliseconds
+     * @param maxMessages The number of incomplete messages kept at most
+     * @param maxBytes The bytes of incomplete messages kept at most, and of
+     * one message
+     */
+    Reassembler(Scheduler clock, long timeout, int maxMessages, long maxBytes) {
+        this.clock = clock;
+        this.timeout = timeout;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.pending = new LinkedHashMap<>();
+        this.pendingBytes = 0;
+    }
+
+    /**
+     * Add a received fragment
+     *
+     * @param fragment The fragment, between position and limit
+     * @param sender The address the fragment came from
+     * @return The whole message if this was its last missing fragment, null
+     * otherwise
+     * @throws IllegalArgumentException If the fragment header is invalid, or
+     * the message would be larger than maxBytes
+     */
+    synchronized ByteBuffer add(ByteBuffer fragment, SocketAddress sender) {
+        if (fragment.remaining() < Fragmenter.HEADER_SIZE || fragment.get() != Fragmenter.MAGIC) {
+            throw new IllegalArgumentException("Wrong format. Not a fragment.");
+        }
+        long id = fragment.getLong();
+        int index = fragment.getShort() & 0xFFFF;
+        int count = fragment.getShort() & 0xFFFF;
+        if (count < 1 || index >= count) {
+            throw new IllegalArgumentException("Wrong format. Bad fragment index.");
+        }
+        // every fragment but the last is full, and none is empty
+        int chunkSize = fragment.remaining();
+        long atLeast = index < count - 1 ? (long) (count - 1) * chunkSize + 1 : count - 1 + chunkSize;
+        if (atLeast > maxBytes) {
+            throw new IllegalArgumentException("Wrong format. Fragmented message too large.");
+        }
+
+        long now = clock.now();
+        expire(now);
+        Key key = new Key(sender, id);
+        Partial p = pending.get(key);
+        if (p == null) {
+            p = new Partial(count, now);
+            pending.put(key, p);
+        } else if (p.chunks.length != count) {
+            throw new IllegalArgumentException("Wrong format. Fragment count changed.");
+        } else if (p.bytes + chunkSize > maxBytes) {
+            pending.remove(key);
+            pendingBytes -= p.bytes;
+            throw new IllegalArgumentException("Wrong format. Fragmented message too large.");
+        }
+        if (p.chunks[index] == null) {
+            byte[] chunk = new byte[fragment.remaining()];
+            fragment.get(chunk);
+            p.chunks[index] = chunk;
+            p.received++;
+            p.bytes += chunk.length;
+            pendingBytes += chunk.length;
+        }
+
+        if (p.received < count) {
+            evictOverflow();
+            return null;
+        }
+        pending.remove(key);
+        pendingBytes -= p.bytes;
+        ByteBuffer message = ByteBuffer.allocate(p.bytes);
+        for (byte[] chunk : p.chunks) {
+            message.put(chunk);
+        }
+        message.flip();
+        return message;
+    }
+
+    /**
+     * Drop the messages whose first fragment is older than the timeout
+     */
+    private void expire(long now) {
+        for (Iterator<Partial> it = pending.values().iterator(); it.hasNext();) {
+            Partial p = it.next();
+            if (now - p.firstSeen < timeout) {
+                return; // the map is in arrival order
+            }
+            pendingBytes -= p.bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * Drop the oldest messages while over the limits
+     */
+    private void evictOverflow() {
+        for (Iterator<Partial> it = pending.values().iterator();
+                it.hasNext() && (pending.size() > maxMessages || pendingBytes > maxBytes);) {
+            Partial p = it.next();
+            pendingBytes -= p.bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * The sender and id of a message
+     */
+    private static final class Key {
+
+        private final SocketAddress sender;
+        private final long id;
+
+        Key(SocketAddress sender, long id) {
+            this.sender = sender;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return id == k.id && (sender == null ? k.sender == null : sender.equals(k.sender));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (id ^ (id >>> 32)) + (sender == null ? 0 : sender.hashCode());
+        }
+    }
+
+    private static class Partial {
+
+        private final byte[][] chunks;
+        private final long firstSeen;
+        private int received;
+        private int bytes;
+
+        Partial(int count, long firstSeen) {
+            this.chunks = new byte[count][];
+            this.firstSeen = firstSeen;
+        }
+    }
+}
@@ -1,16 +1,25 @@
 package dvroutingsimulator;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.net.SocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,19 +37,65 @@ public class Router {
     private final Set<Address> liveNeighborAdds;
     private final Map<Address, Neighbor> neighborsCache;
 
-    //the forward table
-    private final Map<Address, Neighbor> forwardTable;
+    //the forward table: next hops by destination id, changed by the event loop,
+    //and the snapshot of it published after each route computation
+    private Neighbor[] routes;
+    private volatile ForwardingTable fib;
+
+    //equal-cost multipath: every next hop at the minimum cost, by destination
+    //id, null where there is only one, and the salt of the flow hashes
+    private final boolean ecmp;
+    private Neighbor[][] multipath;
+    private boolean multipathChanged;
+    private final int flowSalt;
 
     //current distance vector
     private final DistanceVector dv;
 
     //threads
-    private RouterListener rl;
+    private final RouterListener rl;
     private AutoUpdater au;
     private ConsoleReader cr;
+    private final ThreadFactory threads;
+    private Thread rlThread;
 
     private final boolean reverse;
+    private final MessageCodec codec;
+    private final Transport transport;
+    private final EventLoop loop;
+    private final Scheduler scheduler;
+    private final LivenessMonitor liveness;
+    private final BufferPool sendBuffers;
+    private final RouterMetrics metrics;
+    private final EventLog log;
+    private final long metricsPeriod;
+    private Scheduler.Cancellable metricsDump;
+
+    //messages larger than a datagram are sent in fragments
+    private final int datagramSize;
+    private final AtomicLong nextMessageId;
+    private final Reassembler reassembler;
+
+    //triggered updates waiting for the end of their hold-down window
+    private final long holdDown;
+    private final Random jitter;
+    private Scheduler.Cancellable pendingUpdate;
+
+    //delta advertisements: destinations changed since the previous advertisement
+    private final boolean deltaMode;
+    private final Set<Address> pendingDelta = new HashSet<>();
+
+    //infinity metric: lost routes are advertised at infinity until their
+    //withdrawal timer expires, and held down meanwhile with a hold timer
+    private final int infinity;
+    private final long holdTimer;
+    private final Map<Address, Scheduler.Cancellable> withdrawals = new HashMap<>();
+    private static final int WITHDRAWAL_ROUNDS = 2; // AutoUpdater rounds a lost route is advertised at infinity
     private static final int MAX_TIME_TO_LIVE = 15;
+    private static final int NEIGHBOR_TIMEOUT_ROUNDS = 3; // AutoUpdater rounds before a silent neighbor is dropped
+    static final int MAX_PACKET_SIZE = 65507; // largest UDP payload
+    static final int MAX_MESSAGE_SIZE = 16 << 20; // largest message, before fragmentation
+    private static final int SHARED_DV_HEADER = 2 * 300; // room for the per-neighbor fields of a DV message
 
     /**
      * Create a router
@@ -48,17 +103,118 @@ public class Router {
      * @param ip The IP of the router
      * @param port The port of the router
      * @param reverse true if poison reverse is activated, false if not
+     * @throws java.io.IOException If the port of the router cannot be bound
+     */
+    public Router(String ip, int port, boolean reverse) throws IOException {
+        this(ip, port, configWithReverse(reverse));
+    }
+
+    /**
+     * Create a router
+     *
+     * @param ip The IP of the router
+     * @param port The port of the router
+     * @param config The options of the router
+     * @throws java.io.IOException If the port of the router cannot be bound
      */
-    public Router(String ip, int port, boolean reverse) {
-        address = new Address(ip, port);
-        this.reverse = reverse;
+    Router(String ip, int port, RouterConfig config) throws IOException {
+        this(Address.of(ip, port), config, new UdpTransport(port, useVirtualThreads(config)));
+    }
 
-        //make sure that the containers here are threadsafe
-        forwardTable = new ConcurrentHashMap<>();
-        liveNeighborAdds = ConcurrentHashMap.newKeySet();
-        neighborsCache = new ConcurrentHashMap<>();
+    /**
+     * Create a router on a given transport, with its own event loop on the
+     * threads chosen by the config, and timers on the shared wheel
+     *
+     * @param address The address of the router
+     * @param config The options of the router
+     * @param transport The transport packets are sent with
+     */
+    Router(Address address, RouterConfig config, Transport transport) {
+        this(address, config, transport, HashedWheelTimer.shared(), useVirtualThreads(config)
+                ? new EventLoop(Threads.perTask("router-" + address.port + "-loop"))
+                : new EventLoop("router-" + address.port));
+    }
+
+    /**
+     * Create a router on a given transport and scheduler, such as the ones of
+     * a Simulator. Its events run on the thread that posts them.
+     *
+     * @param address The address of the router
+     * @param config The options of the router
+     * @param transport The transport packets are sent with
+     * @param scheduler The scheduler running the timed tasks
+     */
+    Router(Address address, RouterConfig config, Transport transport, Scheduler scheduler) {
+        this(address, config, transport, scheduler, new EventLoop(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }));
+    }
+
+    /**
+     * Create a router on a given transport, scheduler and event loop
+     *
+     * @param address The address of the router
+     * @param config The options of the router
+     * @param transport The transport packets are sent with
+     * @param scheduler The scheduler running the timed tasks
+     * @param loop The loop running the events of the router
+     */
+    Router(Address address, RouterConfig config, Transport transport, Scheduler scheduler, EventLoop loop) {
+        this.address = address;
+        this.reverse = config.reverse;
+        this.codec = config.codec;
+        this.transport = transport;
+        this.loop = loop;
+        this.scheduler = loop.bind(scheduler);
+        // expiries drop the neighbor, so they run on the loop like any event
+        this.liveness = new LivenessMonitor(this.scheduler, NEIGHBOR_TIMEOUT_ROUNDS * AutoUpdater.T * 1000,
+                new LivenessMonitor.Listener() {
+            @Override
+            public void expired(Neighbor n) {
+                dropNeighbor(n.getAddress());
+            }
+        });
+        this.sendBuffers = new BufferPool(MAX_PACKET_SIZE, 8);
+        this.metrics = new RouterMetrics(address, this.scheduler);
+        this.log = EventLog.shared();
+        this.metricsPeriod = config.metricsPeriod;
+        this.datagramSize = config.datagramSize;
+        this.nextMessageId = new AtomicLong(new Random(address.hashCode()).nextLong());
+        this.reassembler = new Reassembler(scheduler, AutoUpdater.T * 1000, 64, MAX_MESSAGE_SIZE);
+        this.holdDown = config.holdDown;
+        this.deltaMode = config.delta;
+        this.ecmp = config.ecmp;
+        this.flowSalt = address.hashCode();
+        this.infinity = config.infinity;
+        this.holdTimer = config.infinity > 0 ? config.holdTimer : 0;
+        this.jitter = new Random(address.hashCode());
+        this.threads = Threads.factory("router-" + address.port, useVirtualThreads(config));
+
+        //the containers are only touched by the event loop
+        routes = new Neighbor[0];
+        multipath = new Neighbor[0][];
+        fib = ForwardingTable.EMPTY;
+        liveNeighborAdds = new HashSet<>();
+        neighborsCache = new HashMap<>();
         dv = new DistanceVector();
+        rl = new RouterListener(this);
+    }
 
+    /**
+     * Check if a router runs on virtual threads: when asked to and the JVM
+     * has them
+     */
+    private static boolean useVirtualThreads(RouterConfig config) {
+        return config.virtualThreads && Threads.virtualAvailable();
+    }
+
+    private static RouterConfig configWithReverse(boolean reverse) {
+        RouterConfig config = new RouterConfig();
+        config.reverse = reverse;
+        return config;
     }
 
     /**
@@ -70,6 +226,73 @@ public class Router {
         return address;
     }
 
+    /**
+     * Get the transport the router sends and receives packets with
+     *
+     * @return The transport of the router
+     */
+    Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Get the scheduler running the timed tasks of the router, as events of
+     * its loop
+     *
+     * @return The scheduler of the router
+     */
+    Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Post an event to the loop of the router. Everything that reads or
+     * changes the routes and neighbors of the router runs as such an event.
+     *
+     * @param event The event
+     */
+    void execute(Runnable event) {
+        loop.execute(event);
+    }
+
+    /**
+     * Get the measurements of the router
+     *
+     * @return The metrics of the router
+     */
+    RouterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the monitor that drops neighbors which stopped advertising
+     *
+     * @return The liveness monitor of the router
+     */
+    LivenessMonitor getLiveness() {
+        return liveness;
+    }
+
+    /**
+     * Get the reassembler of the fragmented messages received by the router
+     *
+     * @return The reassembler of the router
+     */
+    Reassembler getReassembler() {
+        return reassembler;
+    }
+
+    /**
+     * Handle a packet pushed to the router, instead of read by its listener
+     * thread
+     *
+     * @param packet The bytes of exactly one packet
+     * @param sender The address the packet came from
+     */
+    void receive(ByteBuffer packet, SocketAddress sender) {
+        rl.handlePacket(packet, sender);
+    }
+
 //======================NEIGHBOR METHODS=====================================
     /**
      * Check if an address is a neighbor of a router
@@ -83,13 +306,22 @@ public class Router {
 
     /**
      * Add a neighbor when only address is present -- only add when the neighbor
-     * is cached
+     * is cached. A neighbor coming back gets its routes recomputed, the direct
+     * one included, since the DV it sends next is diffed against the one
+     * stored before it was dropped.
      *
      * @param a Address of the neighbor
      */
     public void addNeighbor(Address a) {
-        if (neighborsCache.containsKey(a)) {
-            liveNeighborAdds.add(a);
+        if (neighborsCache.containsKey(a) && liveNeighborAdds.add(a)) {
+            metrics.topologyChanged();
+            if (!runDVAlgorithm(affectedBy(a)).isEmpty()) {
+                try {
+                    triggerUpdate();
+                } catch (IOException ex) {
+                    Logger.getLogger(Router.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
         }
     }
 
@@ -105,13 +337,33 @@ public class Router {
         Neighbor newNeighbor = new Neighbor(a, weight, this);
         liveNeighborAdds.add(a);
         neighborsCache.put(a, newNeighbor);
+        metrics.topologyChanged();
 
         //run the DV algorithm, and advertise if updated
-        if (runDVAlgorithm()) {
-            advertiseDV(false);
+        if (!runDVAlgorithm(affectedBy(a)).isEmpty()) {
+            triggerUpdate();
         }
     }
 
+    /**
+     * Add the neighbors of an input file, on the event loop like every other
+     * change of the router's state, so that it is safe from any thread
+     *
+     * @param file The content of the router's input file
+     */
+    void addNeighbors(final RouterFile file) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    file.addNeighborsTo(Router.this);
+                } catch (IOException ex) {
+                    Logger.getLogger(Router.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        });
+    }
+
     /**
      * Remove a neighbor
      *
@@ -121,20 +373,33 @@ public class Router {
         Neighbor n = neighborsCache.get(a);
 
         liveNeighborAdds.remove(a); // remove neighbor from list of live neighbor addresses
-        dv.removeDistance(a); // remove neighbor from distance vector
         n.stopTimer(); // stop timer for this neighbor
-
-        // remove neighbor as a potential nexthop neighbor in forwarding table
-        forwardTable.remove(a);
-        for (Address destAdd : forwardTable.keySet()) {
-            if (forwardTable.get(destAdd).equals(n)) {
-                forwardTable.remove(destAdd);
+        n.resetSeq(); // it needs a full DV when it comes back
+        metrics.dropped();
+        metrics.topologyChanged();
+
+        // recompute every route that used this neighbor as its next hop,
+        // routes with no other next hop are removed from dv and forwarding table
+        Set<Address> affected = new HashSet<>();
+        affected.add(a);
+        for (int id = n.served.nextSetBit(0); id >= 0; id = n.served.nextSetBit(id + 1)) {
+            affected.add(AddressTable.get(id));
+        }
+        if (ecmp) {
+            // and the ones it was one of several equal-cost hops of
+            affected.addAll(affectedBy(a));
+        }
+        log.info("neighbor " + a.toString() + " dropped");
+
+        // propagate the lost routes right away instead of at the next round
+        if (!runDVAlgorithm(affected).isEmpty()) {
+            try {
+                triggerUpdate();
+            } catch (IOException ex) {
+                Logger.getLogger(Router.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
 
-        // debug print to System.out
-        System.out.println("neighbor " + a.toString() + " dropped");
-
     }
 
     /**
@@ -164,24 +429,138 @@ public class Router {
 
 //======================COMMUNICATION METHODS=====================================
     /**
-     * Send a message directly to a specific router
+     * Send a message directly to a specific router, encoded in the configured
+     * wire format
      *
      * @param m Message
      * @param neighbor The next hop neighbor
-     * @throws java.net.SocketException
-     * @throws java.net.UnknownHostException
+     * @throws java.io.IOException
      */
-    private void sendMessage(String m, Neighbor neighbor) throws IOException {
-        try (DatagramSocket socket = new DatagramSocket()) {
-            InetAddress dstIP = InetAddress.getByName(neighbor.getAddress().ip);
-            int dstPort = neighbor.getAddress().port;
+    private void sendMessage(Message m, Neighbor neighbor) throws IOException {
+        ByteBuffer data = sendBuffers.acquire();
+        try {
+            sendEncoded(encode(m, null, null, data), m.getType(), neighbor);
+        } finally {
+            sendBuffers.release(data);
+        }
+    }
 
-            // Put message in a packet
-            byte[] sendData = m.getBytes();
-            DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, dstIP, dstPort);
+    /**
+     * Send an encoded message, in fragments if it does not fit in a datagram
+     *
+     * @param encoded The message, between position and limit
+     * @param type The type of the message
+     * @param neighbor The next hop neighbor
+     */
+    private void sendEncoded(ByteBuffer encoded, MsgType type, Neighbor neighbor) throws IOException {
+        metrics.sent(type, Fragmenter.send(encoded, datagramSize, nextMessageId.getAndIncrement(),
+                transport, neighbor, sendBuffers));
+    }
 
-            // Write to output stream
-            socket.send(sendPacket);
+    /**
+     * Encode a message, or the vector of a DV message if m is null, in a
+     * larger heap buffer if it does not fit in a datagram
+     *
+     * @param m The message, null to encode vector
+     * @param vector The vector to encode, if m is null
+     * @param poisoned The ids of the destinations of vector poisoned, null for
+     * none
+     * @param data A pooled buffer of MAX_PACKET_SIZE bytes
+     * @return The buffer holding the encoded bytes, flipped
+     */
+    private ByteBuffer encode(Message m, DistanceVector vector, BitSet poisoned, ByteBuffer data) {
+        for (int size = data.capacity();; size *= 4) {
+            try {
+                if (m != null) {
+                    codec.encode(m, data);
+                } else {
+                    codec.encodeVector(vector, poisoned, poison(), data);
+                }
+                data.flip();
+                return data;
+            } catch (BufferOverflowException ex) {
+                if (size >= MAX_MESSAGE_SIZE) {
+                    throw ex;
+                }
+                data = ByteBuffer.allocate(Math.min(size * 4, MAX_MESSAGE_SIZE));
+            }
+        }
+    }
+
+    /**
+     * Look up the next hop to a destination in the last published forwarding
+     * table. Safe to call from any thread.
+     *
+     * @param destAdd The destination
+     * @return The neighbor to forward to, null if the destination is not
+     * reachable
+     */
+    Neighbor nextHop(Address destAdd) {
+        return fib.nextHop(destAdd);
+    }
+
+    /**
+     * Look up the next hop of a content message, among the equal-cost ones
+     * by the hash of its flow if there are several
+     *
+     * @param m The message
+     * @return The neighbor to forward to, null if the destination is not
+     * reachable
+     */
+    private Neighbor nextHop(ContentMessage m) {
+        ForwardingTable table = fib;
+        int destId = m.getDstAddress().id;
+        if (!table.isMultipath(destId)) {
+            return table.nextHop(destId);
+        }
+        return table.nextHop(destId, m.flowHash() ^ flowSalt);
+    }
+
+    /**
+     * Forward a content message in transit straight from the bytes received,
+     * in the wire format it arrived in: only its header is read, and its
+     * payload is never decoded unless info events are logged. Safe to call
+     * from any thread.
+     *
+     * @param packet The buffer holding exactly one encoded message
+     * @return true if the message was forwarded, false if it has to be
+     * decoded and handled: not a content message, destined to this router,
+     * unreachable or out of time to live
+     * @throws IOException If the message cannot be sent
+     * @throws IllegalArgumentException if the header is not valid
+     */
+    boolean forwardPacket(ByteBuffer packet) throws IOException {
+        MessageCodec format = MessageCodec.forPacket(packet);
+        Address dstAdd = format.contentDestination(packet);
+        if (dstAdd == null || dstAdd.equals(address)) {
+            return false;
+        }
+        ForwardingTable table = fib;
+        Neighbor nextHopNeighbor = table.isMultipath(dstAdd.id)
+                ? table.nextHop(dstAdd.id, format.contentFlow(packet) ^ flowSalt)
+                : table.nextHop(dstAdd.id);
+        if (nextHopNeighbor == null) {
+            return false;
+        }
+        ByteBuffer pooled = sendBuffers.acquire();
+        try {
+            ByteBuffer data = format.forwardContent(packet, address, pooled);
+            if (data == null) {
+                return false;
+            }
+            ByteBuffer sent = data.duplicate();
+            sendEncoded(data, MsgType.CONTENT, nextHopNeighbor);
+            if (log.isEnabled(EventLog.Level.INFO)) {
+                ContentMessage m = (ContentMessage) format.decode(sent);
+                log.info("Message msg"
+                        + " from " + m.getSrcAddress().toString()
+                        + " to " + m.getDstAddress().toString()
+                        + " forwarded to " + nextHopNeighbor.getAddress().toString()
+                        + "\nmsg(" + m.getMessage() + ")");
+            }
+            return true;
+        } finally {
+            sendBuffers.release(pooled);
         }
     }
 
@@ -196,9 +575,9 @@ public class Router {
         if (m.getTimeToLive() > 0) {
 
             // Look up the dest IP in the forwarding table
-            Neighbor nextHopNeighbor = forwardTable.get(m.getDstAddress());
+            Neighbor nextHopNeighbor = nextHop(m);
             if (nextHopNeighbor == null) {
-                System.out.println(m.getDstAddress().toString() + "is not reachable");
+                log.info(m.getDstAddress().toString() + "is not reachable");
                 return;
             }
 
@@ -207,14 +586,14 @@ public class Router {
             m.addRouter(this.address);
 
             // Foward message using writeToOuputStream
-            sendMessage(m.toString(), nextHopNeighbor);
-            System.out.println("Message msg"
+            sendMessage(m, nextHopNeighbor);
+            log.info("Message msg"
                     + " from " + m.getSrcAddress().toString()
                     + " to " + m.getDstAddress().toString()
                     + " forwarded to " + nextHopNeighbor.getAddress().toString()
                     + "\nmsg(" + m.getMessage() + ")");
         } else {
-            System.out.println("Message msg"
+            log.info("Message msg"
                     + " from " + m.getSrcAddress().toString()
                     + " to " + m.getDstAddress().toString()
                     + " died (timeToLive <= 0)\nmsg(" + m.getMessage() + ")");
@@ -247,29 +626,39 @@ public class Router {
                 this.address.ip, this.address.port, dstAdd.ip, dstAdd.port, newW);
 
         // Send the message directly to the neighbor
-        this.sendMessage(wm.toString(), neighborsCache.get(dstAdd));
+        this.sendMessage(wm, neighborsCache.get(dstAdd));
     }
 
     /**
-     * Print action taken when router receive a content message destined to
-     * itself
+     * Log a message received: one info line, and the distance vectors it
+     * carries at debug level
      *
      * @param m The message received
      */
     public void debugPrintReceiveMsg(Message m) {
         switch (m.getType()) {
             case CONTENT:
-                System.out.println("Message msg received from " + m.getSrcAddress().toString()
+                log.info("Message msg received from " + m.getSrcAddress().toString()
                         + "\nmsg(" + ((ContentMessage) m).getMessage() + ")");
                 return;
             case DV:
-                System.out.println("new dv received from " + m.getSrcAddress().toString());
-                DVMessage dMsg = (DVMessage) m;
-                System.out.println(dMsg.getDistVect().debugPrint());
-
+                log.info("new dv received from " + m.getSrcAddress().toString());
+                if (log.isDebugEnabled()) {
+                    log.debug(((DVMessage) m).getDistVect().debugPrint());
+                }
                 return;
             case WEIGHT:
-                System.out.println("new weight to neighbor " + m.getSrcAddress().toString() + " of " + ((WeightMessage) m).getWeight());
+                log.info("new weight to neighbor " + m.getSrcAddress().toString() + " of " + ((WeightMessage) m).getWeight());
+                return;
+            case DVDELTA:
+                DVDeltaMessage ddMsg = (DVDeltaMessage) m;
+                log.info("new dv delta " + ddMsg.getSeq() + " received from " + m.getSrcAddress().toString());
+                if (log.isDebugEnabled()) {
+                    log.debug(ddMsg.debugPrintChanged());
+                    if (!ddMsg.getWithdrawn().isEmpty()) {
+                        log.debug("withdrawn " + ddMsg.getWithdrawn().toString());
+                    }
+                }
                 return;
         }
 
@@ -277,57 +666,267 @@ public class Router {
 
 //======================DISTANCE VECTOR METHODS=====================================
     /**
-     * Run the DV Algorithm
+     * Run the DV Algorithm over every known destination
      *
      * @return true if algorithm results in change in distance vector, otherwise
      * false
      */
     public boolean runDVAlgorithm() {
-        DistanceVector oldDV = (DistanceVector) dv.deepCopy();
-        dv.clear();
+        Set<Address> dests = new HashSet<>(dv.addressSet());
+        for (Address nAdd : liveNeighborAdds) {
+            dests.add(nAdd);
+            dests.addAll(neighborsCache.get(nAdd).getDistVector().addressSet());
+        }
+        return !runDVAlgorithm(dests).isEmpty();
+    }
+
+    /**
+     * Run the DV Algorithm only for the destinations affected by an event.
+     * Every other entry of the distance vector is left untouched.
+     *
+     * @param affected The destinations whose best route may have changed
+     * @return the destinations whose distance or next hop changed
+     */
+    public Set<Address> runDVAlgorithm(Collection<Address> affected) {
+        long start = System.nanoTime();
+        Set<Address> changed = new HashSet<>();
+        for (Address destAdd : affected) {
+            if (!destAdd.equals(address) && recomputeRoute(destAdd)) {
+                changed.add(destAdd);
+            }
+        }
+        metrics.recomputed(System.nanoTime() - start);
+
+        if (changed.isEmpty()) {
+            if (multipathChanged) {
+                publishRoutes(); // the distances are the same, only the hops in use changed
+            }
+            return changed;
+        }
+        metrics.routesChanged();
+        publishRoutes();
+        if (deltaMode) {
+            pendingDelta.addAll(changed);
+        }
+
+        if (log.isDebugEnabled()) {
+            StringBuilder table = new StringBuilder("new dv calculated:");
+            for (int id = dv.nextId(0); id >= 0; id = dv.nextId(id + 1)) {
+                Neighbor hop = route(id);
+                table.append('\n').append(AddressTable.get(id)).append(' ')
+                        .append(dv.distance(id)).append(' ')
+                        .append(hop == null ? "unreachable" : hop.getAddress().toString());
+            }
+            log.debug(table.toString());
+        }
+
+        return changed;
+    }
+
+    /**
+     * Recompute the best route to a single destination: the direct link if the
+     * destination is a live neighbor, improved by any shorter path advertised
+     * by a live neighbor. With an infinity metric, a route lost is kept at
+     * infinity until its withdrawal timer expires, and a route held down
+     * accepts no new route until then.
+     *
+     * @param destAdd The destination to recompute
+     * @return true if the distance or the next hop to destAdd changed
+     */
+    private boolean recomputeRoute(Address destAdd) {
+        int destId = AddressTable.idOf(destAdd);
+        int currDist = dv.distance(destId);
+        Neighbor currHop = route(destId);
+        if (holdTimer > 0 && withdrawals.containsKey(destAdd)) {
+            return false;
+        }
+
+        int bestDist = DistanceVector.NONE;
+        Neighbor bestHop = null;
+
+        if (liveNeighborAdds.contains(destAdd)) {
+            Neighbor n = neighborsCache.get(destAdd);
+            if (isReachable(n.getLinkWeight())) {
+                bestHop = n;
+                bestDist = n.getLinkWeight();
+            }
+        }
 
-        //first add all neighbors into dv
         for (Address nAdd : liveNeighborAdds) {
             Neighbor n = neighborsCache.get(nAdd);
-            dv.updateDistance(nAdd, n.getLinkWeight());
-            forwardTable.put(nAdd, n);
+            int nDist = n.getDistVector().distance(destId);
+            if (isReachable(nDist)) {
+                int newDist = n.getLinkWeight() + nDist;
+                //if link weight to neighbor + neighbor's distance to dest < current distance, update
+                if (isReachable(newDist) && (bestHop == null || bestDist > newDist)) {
+                    bestDist = newDist;
+                    bestHop = n;
+                }
+            }
+        }
+
+        if (bestHop == null) {
+            setRoute(destId, null);
+            setEqualHops(destId, null);
+            if (infinity > 0 && isReachable(currDist)) {
+                // poison the route, so the neighbors drop it too
+                dv.updateDistance(destId, infinity);
+                startWithdrawal(destAdd);
+                return true;
+            }
+            if (currDist == DistanceVector.NONE || withdrawals.containsKey(destAdd)) {
+                return false;
+            }
+            dv.removeDistance(destId);
+            return true;
+        }
+        Scheduler.Cancellable withdrawal = withdrawals.remove(destAdd);
+        if (withdrawal != null) {
+            withdrawal.cancel();
         }
+        dv.updateDistance(destId, bestDist);
+        setRoute(destId, bestHop);
+        if (ecmp) {
+            setEqualHops(destId, equalHops(destAdd, bestDist));
+        }
+        return bestDist != currDist || bestHop != currHop;
+    }
 
-        // then iterate through all neighbors' distance vector
+    /**
+     * Get every next hop to a destination at a given cost: the destination
+     * itself if it is a neighbor at that cost, and the neighbors advertising
+     * it at that cost minus their link weight
+     *
+     * @param destAdd The destination
+     * @param cost The minimum cost to the destination
+     * @return The next hops sorted by address id, null if there is only one
+     */
+    private Neighbor[] equalHops(Address destAdd, int cost) {
+        List<Neighbor> hops = new ArrayList<>();
         for (Address nAdd : liveNeighborAdds) {
             Neighbor n = neighborsCache.get(nAdd);
+            int nDist = n.getDistVector().distance(destAdd.id);
+            if ((nAdd.equals(destAdd) && n.getLinkWeight() == cost)
+                    || (isReachable(nDist) && n.getLinkWeight() + nDist == cost)) {
+                hops.add(n);
+            }
+        }
+        if (hops.size() < 2) {
+            return null;
+        }
+        Neighbor[] sorted = hops.toArray(new Neighbor[hops.size()]);
+        Arrays.sort(sorted, new Comparator<Neighbor>() {
+            @Override
+            public int compare(Neighbor a, Neighbor b) {
+                return Integer.compare(a.getAddress().id, b.getAddress().id);
+            }
+        });
+        return sorted;
+    }
 
-            //iterate though all the destination addresses in a neighbor vector
-            DistanceVector nDV = n.getDistVector();
-            for (Address destAdd : nDV.addressSet()) {
-                if (!destAdd.equals(address)) {
-                    Integer newDist = n.getLinkWeight() + nDV.getDistance(destAdd);
-                    Integer currDist = dv.getDistance(destAdd);
-
-                    //if link weight to neighbor + neighbor's distance to dest < current distance, update
-                    if (currDist == null || currDist > newDist) {
-                        dv.updateDistance(destAdd, newDist);
-                        forwardTable.put(destAdd, n);
+    /**
+     * Set the equal-cost next hops to a destination, null for none
+     */
+    private void setEqualHops(int destId, Neighbor[] hops) {
+        if (destId >= multipath.length) {
+            if (hops == null) {
+                return;
+            }
+            multipath = Arrays.copyOf(multipath, Math.max(destId + 1, multipath.length * 2));
+        }
+        if (!Arrays.equals(multipath[destId], hops)) {
+            multipath[destId] = hops;
+            multipathChanged = true;
+        }
+    }
+
+    /**
+     * Publish a snapshot of the forward table being computed
+     */
+    private void publishRoutes() {
+        fib = new ForwardingTable(routes.clone(), ecmp ? multipath.clone() : null);
+        multipathChanged = false;
+    }
+
+    /**
+     * Check if a distance stands for a reachable destination: any distance
+     * without an infinity metric, or one lower than infinity
+     */
+    private boolean isReachable(int dist) {
+        return dist != DistanceVector.NONE && (infinity <= 0 || (dist >= 0 && dist < infinity));
+    }
+
+    /**
+     * Keep a lost route advertised at infinity for the hold timer, or for
+     * WITHDRAWAL_ROUNDS rounds without one, then remove it from the distance
+     * vector unless a new route was found meanwhile
+     *
+     * @param destAdd The destination of the route lost
+     */
+    private void startWithdrawal(final Address destAdd) {
+        long delay = holdTimer > 0 ? holdTimer : WITHDRAWAL_ROUNDS * AutoUpdater.T * 1000;
+        withdrawals.put(destAdd, scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (withdrawals.remove(destAdd) == null) {
+                    return; // a route was found meanwhile
+                }
+                if (!runDVAlgorithm(Collections.singleton(destAdd)).isEmpty()) {
+                    try {
+                        triggerUpdate();
+                    } catch (IOException ex) {
+                        Logger.getLogger(Router.class.getName()).log(Level.SEVERE, null, ex);
                     }
                 }
-
             }
-        }
+        }, delay));
+    }
 
-        boolean isChanged = !oldDV.equals(dv);
+    /**
+     * Get the next hop to a destination in the forward table being computed
+     */
+    private Neighbor route(int destId) {
+        return destId < routes.length ? routes[destId] : null;
+    }
 
-        //debug print to System.out
-        if (isChanged) {
-            System.out.println("new dv calculated:");
-            for (Address a : dv.addressSet()) {
-                System.out.println(a.toString() + " "
-                        + dv.getDistance(a) + " "
-                        + forwardTable.get(a).getAddress().toString());
+    /**
+     * Set the next hop to a destination in the forward table being computed,
+     * null to remove the route
+     */
+    private void setRoute(int destId, Neighbor hop) {
+        if (destId >= routes.length) {
+            if (hop == null) {
+                return;
             }
+            routes = Arrays.copyOf(routes, Math.max(destId + 1, routes.length * 2));
         }
+        Neighbor old = routes[destId];
+        if (old != hop) {
+            if (old != null) {
+                old.served.clear(destId);
+            }
+            if (hop != null) {
+                hop.served.set(destId);
+            }
+            routes[destId] = hop;
+        }
+    }
 
-        return isChanged;
-
+    /**
+     * Get the destinations whose route may depend on a neighbor: the neighbor
+     * itself and every destination it advertises.
+     *
+     * @param nAdd Neighbor address
+     * @return the destinations to recompute after a change on that neighbor
+     */
+    public Set<Address> affectedBy(Address nAdd) {
+        Set<Address> dests = new HashSet<>();
+        dests.add(nAdd);
+        Neighbor n = neighborsCache.get(nAdd);
+        if (n != null) {
+            dests.addAll(n.getDistVector().addressSet());
+        }
+        return dests;
     }
 
     /**
@@ -343,78 +942,328 @@ public class Router {
         int currWeight = n.getLinkWeight();
         if (currWeight != weight) {
             n.setLinkWeight(weight);
+            metrics.topologyChanged();
             return true;
         }
         return false;
     }
 
     /**
-     * Update a distance vector of neighbor router. If the update is different,
-     * run distance vector algorithm
+     * Update a distance vector of neighbor router. The returned destinations
+     * are the ones whose advertised distance differs from the previous vector
+     * of that neighbor, and are the only ones the DV algorithm has to revisit.
      *
      * @param nAdd Neighbor address
      * @param nDV Neighbor distance vector
-     * @return true if DV is changed and updated
-     * @throws java.io.IOException
+     * @param seq The sequence number of the advertisement
+     * @return the destinations changed by the update, empty if DV is unchanged
      */
-    public boolean updateDV(Address nAdd, DistanceVector nDV) throws IOException {
+    public Set<Address> updateDV(Address nAdd, DistanceVector nDV, int seq) {
         Neighbor n = neighborsCache.get(nAdd);
-        DistanceVector currDV = neighborsCache.get(nAdd).getDistVector();
-        if (!currDV.equals(nDV)) {
+        Set<Address> changed = new HashSet<>();
+        if (n == null) {
+            return changed; // not a configured neighbor
+        }
+        n.syncedTo(seq);
+        DistanceVector currDV = n.getDistVector();
+        for (int id = nDV.nextId(0); id >= 0; id = nDV.nextId(id + 1)) {
+            if (nDV.distance(id) != currDV.distance(id)) {
+                changed.add(AddressTable.get(id));
+            }
+        }
+        for (int id = currDV.nextId(0); id >= 0; id = currDV.nextId(id + 1)) {
+            if (nDV.distance(id) == DistanceVector.NONE) {
+                changed.add(AddressTable.get(id));
+            }
+        }
+        if (!changed.isEmpty()) {
             n.setDistVector(nDV);
-            return true;
         }
-        return false;
+        return changed;
+    }
+
+    /**
+     * Apply a delta advertisement on the stored distance vector of a neighbor.
+     * A delta that does not directly follow the last advertisement applied
+     * from that neighbor is ignored, its next full DV resyncs it.
+     *
+     * @param nAdd Neighbor address
+     * @param m The delta advertisement
+     * @return the destinations changed by the delta, empty if nothing changed
+     * or the delta was ignored
+     */
+    public Set<Address> applyDelta(Address nAdd, DVDeltaMessage m) {
+        Neighbor n = neighborsCache.get(nAdd);
+        Set<Address> changed = new HashSet<>();
+        if (n == null || !n.acceptDelta(m.getSeq())) {
+            return changed;
+        }
+        DistanceVector currDV = n.getDistVector();
+        for (int i = 0; i < m.changedCount(); i++) {
+            int id = m.changedId(i);
+            int dist = m.changedDistance(i);
+            if (dist != currDV.distance(id)) {
+                currDV.updateDistance(id, dist);
+                changed.add(AddressTable.get(id));
+            }
+        }
+        for (Address destAdd : m.getWithdrawn()) {
+            if (currDV.distance(destAdd.id) != DistanceVector.NONE) {
+                currDV.removeDistance(destAdd.id);
+                changed.add(destAdd);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Advertise the distance vector after it changed. With a hold-down window,
+     * the advertisement waits for the window plus or minus 25% of jitter, and
+     * every change made meanwhile goes out in that same advertisement, so a
+     * burst of changes costs one update per neighbor.
+     *
+     * @throws IOException If the update is sent right away and fails
+     */
+    public void triggerUpdate() throws IOException {
+        if (holdDown <= 0) {
+            advertiseDV(false);
+            return;
+        }
+        if (pendingUpdate != null) {
+            return; // the pending update will carry this change too
+        }
+        long delay = holdDown * 3 / 4 + (long) (jitter.nextDouble() * holdDown / 2);
+        pendingUpdate = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (pendingUpdate == null) {
+                    return; // superseded by a periodic advertisement
+                }
+                pendingUpdate = null;
+                try {
+                    advertiseDV(false);
+                } catch (IOException ex) {
+                    Logger.getLogger(Router.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        }, delay);
     }
 
     /**
-     * Advertise distance vectors to neighbors
+     * Advertise distance vectors to neighbors. In delta mode, triggered updates
+     * only carry the entries changed since the previous advertisement, and
+     * periodic ones are full snapshots that let the neighbors resync.
      *
      * @param isAutoUpdate If this function is called from AutoUpdater or not
      * @throws IOException
      */
     public void advertiseDV(boolean isAutoUpdate) throws IOException {
+        if (isAutoUpdate) {
+            // a full periodic round supersedes any pending triggered update
+            if (pendingUpdate != null) {
+                pendingUpdate.cancel();
+                pendingUpdate = null;
+            }
+        }
+        Set<Address> changed = takePendingDelta();
+        if (deltaMode && !isAutoUpdate) {
+            advertiseDelta(changed);
+            return;
+        }
 
-        //if activated poison reverse, remove distance from addresses not present in forward table
-        if (reverse) {
+        if (liveNeighborAdds.isEmpty()) {
+            return;
+        }
+        // every live neighbor gets the vector, as in advertiseDelta a round
+        // with no neighbor is not an advertisement
+        metrics.advertised(liveNeighborAdds.size());
 
+        // the vector is encoded once and shared by every neighbor it is not
+        // filtered for, only the header differs from one neighbor to the next
+        ByteBuffer pooled = sendBuffers.acquire();
+        try {
+            ByteBuffer vector = null;
             for (Address neiAdd : liveNeighborAdds) {
-                DistanceVector dvToSend = dv.deepCopy();
-
-                for (Address destAdd : forwardTable.keySet()) {
-                    Address nextHopAdd = forwardTable.get(destAdd).getAddress();
-                    if (nextHopAdd.equals(neiAdd)
-                            && !destAdd.equals(nextHopAdd)) {
-                        dvToSend.removeDistance(destAdd);
+                Neighbor n = neighborsCache.get(neiAdd);
+                BitSet poisoned = poisonedFor(n);
+                if (poisoned != null) {
+                    //if activated poison reverse, poison the routes through that neighbor
+                    sendFullDV(n, poisoned);
+                } else {
+                    if (vector == null) {
+                        vector = encode(null, dv, null, pooled).asReadOnlyBuffer();
                     }
+                    sendEncodedDV(n, vector);
                 }
 
-                DVMessage dvMess = new DVMessage(address, neiAdd, dvToSend);
-                sendMessage(dvMess.toString(), neighborsCache.get(neiAdd));
-
-                String printout = "Update sent to neighbor " + neiAdd.toString();
-                if (isAutoUpdate && au != null) {
-                    printout += " at time " + au.getCurrentTime();
+                if (reverse) {
+                    String printout = "Update sent to neighbor " + neiAdd.toString();
+                    if (isAutoUpdate && au != null) {
+                        printout += " at time " + au.getCurrentTime();
+                    }
+                    log.info(printout);
+                    if (log.isDebugEnabled()) {
+                        log.debug(dv.debugPrint(poisoned, poison()));
+                    }
                 }
-                System.out.println(printout);
-                System.out.println(dvToSend.debugPrint());
+            }
+        } finally {
+            sendBuffers.release(pooled);
+        }
+        if (!reverse) {
+            String printout = "Update sent to all neighbors";
+            if (isAutoUpdate && au != null) {
+                printout += " at time " + au.getCurrentTime();
+            }
+            log.info(printout);
+            if (log.isDebugEnabled()) {
+                log.debug(dv.debugPrint());
+            }
+        }
+    }
 
+    /**
+     * Send the entries changed since the previous advertisement to every
+     * neighbor, or the full vector to the ones that never got one
+     *
+     * @param changed The destinations changed since the previous advertisement
+     */
+    private void advertiseDelta(Set<Address> changed) throws IOException {
+        int fanOut = 0;
+        for (Address neiAdd : liveNeighborAdds) {
+            Neighbor n = neighborsCache.get(neiAdd);
+            if (!n.acceptsDeltas()) {
+                sendFullDV(n, poisonedFor(n));
+                fanOut++;
+                log.info("Update sent to neighbor " + neiAdd.toString());
+                continue;
             }
-        } else {
-            for (Address neiAdd : liveNeighborAdds) {
-                DistanceVector dvToSend = dv.deepCopy();
-                DVMessage dvMess = new DVMessage(address, neiAdd, dvToSend);
-                sendMessage(dvMess.toString(), neighborsCache.get(neiAdd));
-            }
-            if (!liveNeighborAdds.isEmpty()) {
-                String printout = "Update sent to all neighbors";
-                if (isAutoUpdate && au != null) {
-                    printout += " at time " + au.getCurrentTime();
+            if (changed.isEmpty()) {
+                continue;
+            }
+            fanOut++;
+
+            int[] ids = new int[changed.size()];
+            int[] dists = new int[ids.length];
+            int entries = 0;
+            List<Address> withdrawn = new ArrayList<>();
+            for (Address destAdd : changed) {
+                int dist = dv.distance(destAdd.id);
+                if (dist != DistanceVector.NONE && isPoisoned(destAdd, neiAdd)) {
+                    dist = poison();
+                }
+                if (dist == DistanceVector.NONE) {
+                    withdrawn.add(destAdd);
+                } else {
+                    ids[entries] = destAdd.id;
+                    dists[entries++] = dist;
                 }
-                System.out.println(printout);
-                System.out.println(dv.debugPrint());
             }
+            DVDeltaMessage deltaMess = new DVDeltaMessage(address, neiAdd, n.nextSentSeq(false),
+                    Arrays.copyOf(ids, entries), Arrays.copyOf(dists, entries), withdrawn);
+            sendMessage(deltaMess, n);
+
+            log.info("Delta update sent to neighbor " + neiAdd.toString());
+            if (log.isDebugEnabled()) {
+                log.debug(deltaMess.debugPrintChanged());
+                if (!withdrawn.isEmpty()) {
+                    log.debug("withdrawn " + withdrawn.toString());
+                }
+            }
+        }
+        if (fanOut > 0) {
+            metrics.advertised(fanOut);
+        }
+    }
+
+    /**
+     * Send a full distance vector to a neighbor
+     *
+     * @param n The neighbor
+     * @param poisoned The ids of the destinations poisoned, null for none
+     */
+    private void sendFullDV(Neighbor n, BitSet poisoned) throws IOException {
+        ByteBuffer pooled = sendBuffers.acquire();
+        try {
+            sendEncodedDV(n, encode(null, dv, poisoned, pooled));
+        } finally {
+            sendBuffers.release(pooled);
+        }
+    }
+
+    /**
+     * Send a full distance vector to a neighbor, from the vector encoded by
+     * the codec, which can be shared by all the neighbors
+     *
+     * @param n The neighbor
+     * @param vector The encoded vector, left unchanged
+     */
+    private void sendEncodedDV(Neighbor n, ByteBuffer vector) throws IOException {
+        ByteBuffer pooled = sendBuffers.acquire();
+        try {
+            ByteBuffer data = pooled;
+            if (vector.remaining() + SHARED_DV_HEADER > data.capacity()) {
+                data = ByteBuffer.allocate(vector.remaining() + SHARED_DV_HEADER);
+            }
+            codec.encodeDV(address, n.getAddress(), n.nextSentSeq(true), vector, data);
+            data.flip();
+            sendEncoded(data, MsgType.DV, n);
+        } finally {
+            sendBuffers.release(pooled);
+        }
+    }
+
+    /**
+     * Get the destinations poison reverse hides from a neighbor: the ones
+     * routed through it, except the neighbor itself. Read from the index of
+     * the destinations each neighbor serves, without scanning the routes.
+     *
+     * @param n The neighbor the vector is sent to
+     * @return The ids of the poisoned destinations, null if none
+     */
+    private BitSet poisonedFor(Neighbor n) {
+        if (!reverse) {
+            return null;
+        }
+        int own = n.getAddress().id;
+        int first = n.served.nextSetBit(0);
+        if (first < 0 || (first == own && n.served.nextSetBit(own + 1) < 0)) {
+            return null;
+        }
+        BitSet poisoned = (BitSet) n.served.clone();
+        poisoned.clear(own);
+        return poisoned;
+    }
+
+    /**
+     * Get the distance poisoned destinations are advertised with: infinity,
+     * or NONE to leave them out when there is no infinity metric
+     */
+    private int poison() {
+        return infinity > 0 ? infinity : DistanceVector.NONE;
+    }
+
+    /**
+     * Check if poison reverse hides a destination from a neighbor, because
+     * the route to it goes through that neighbor
+     */
+    private boolean isPoisoned(Address destAdd, Address neiAdd) {
+        if (!reverse || destAdd.equals(neiAdd)) {
+            return false;
         }
+        Neighbor nextHop = route(destAdd.id);
+        return nextHop != null && nextHop.getAddress().equals(neiAdd);
+    }
+
+    /**
+     * Take the destinations changed since the previous advertisement
+     *
+     * @return The changed destinations, empty if not in delta mode
+     */
+    private Set<Address> takePendingDelta() {
+        Set<Address> changed = new HashSet<>(pendingDelta);
+        pendingDelta.clear();
+        return changed;
     }
 
     /**
@@ -429,87 +1278,166 @@ public class Router {
      * Start all the threads in the router
      */
     public final void startAllThreads() {
-        //start RouterListener thread
-        rl = new RouterListener(this);
-        Thread rlThread = new Thread(rl);
+        startListening();
+
+        //Starting ConsoleReader thread
+        cr = new ConsoleReader(this);
+        threads.newThread(cr).start();
+
+        metrics.register();
+        startMetricsDump();
+    }
+
+    /**
+     * Start the RouterListener thread and the periodic advertisement, without
+     * the console
+     */
+    void startListening() {
+        rlThread = threads.newThread(rl);
         rlThread.start();
 
-        //Starting AutoUpdater thread
+        //the AutoUpdater only schedules the advertisement on the timers
         au = new AutoUpdater(this);
-        Thread auThread = new Thread(au);
-        auThread.start();
+        au.run();
+    }
 
-        //Starting ConsoleReader thread
-        cr = new ConsoleReader(this);
-        Thread crThread = new Thread(cr);
-        crThread.start();
+    /**
+     * Wait until the RouterListener thread stops, which keeps the JVM running
+     * when the threads of the router are virtual
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    void awaitStop() throws InterruptedException {
+        if (rlThread != null) {
+            rlThread.join();
+        }
+    }
+
+    /**
+     * Start a router driven by a simulation: packets are pushed to receive,
+     * and the periodic advertisement runs on the simulation's scheduler
+     */
+    void startSimulated() {
+        au = new AutoUpdater(this);
+        au.run();
+        startMetricsDump();
+    }
+
+    /**
+     * Start a router hosted with others in one JVM: packets are pushed to
+     * receive by the selector thread of the host, and the periodic
+     * advertisement runs on the shared timer
+     */
+    void startHosted() {
+        au = new AutoUpdater(this);
+        au.run();
+        metrics.register();
+        startMetricsDump();
+    }
+
+    /**
+     * Print the metrics as a JSON line every metricsPeriod seconds, if set
+     */
+    private void startMetricsDump() {
+        if (metricsPeriod <= 0) {
+            return;
+        }
+        metricsDump = scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                System.out.println("METRICS " + metrics.toJson());
+            }
+        }, metricsPeriod * 1000, metricsPeriod * 1000);
     }
 
     /**
      * Stop all threads from running
      */
     public void stop() {
+        shutdown();
+        log.flush(1000);
+        System.exit(0);
+    }
+
+    /**
+     * Stop the threads and timers of the router and close its transport,
+     * leaving the JVM running
+     */
+    void shutdown() {
         rl.stop();
-        au.stop();
-        cr.stop();
+        if (au != null) {
+            au.stop();
+        }
+        if (cr != null) {
+            cr.stop();
+        }
         for (Neighbor n: neighborsCache.values()) {
             n.stopTimer();
         }
-        System.exit(0);
+        if (metricsDump != null) {
+            metricsDump.cancel();
+        }
+        for (Scheduler.Cancellable withdrawal : withdrawals.values()) {
+            withdrawal.cancel();
+        }
+        metrics.unregister();
+        transport.close();
+        loop.shutdown();
     }
 
 //======================MAIN METHODS=====================================
     /**
      * Run the program
      *
-     * @param args Command line argument, format "[-reverse] filePath.txt"
+     * @param args Command line argument, format "[-reverse] [-binary] filePath.txt"
      */
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.out.println("Need at least 1 argument. Format: [-reverse] [filepath]");
+            System.out.println("Need at least 1 argument. Format: " + RouterConfig.usage() + " [filepath]");
             return;
         }
 
-        boolean reverse = false;
+        RouterConfig config = new RouterConfig();
         String path = null;
-        for (String arg : args) {
-            if (arg.equals("-reverse")) {
-                reverse = true;
-            } else {
-                path = arg;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                int used = config.parseFlag(args, i);
+                if (used == 0) {
+                    path = args[i];
+                } else {
+                    i += used - 1;
+                }
             }
+        } catch (RuntimeException ex) {
+            System.out.println("Wrong arguments. Format: " + RouterConfig.usage() + " [filepath]");
+            return;
         }
+        EventLog.shared().setLevel(config.logLevel);
 
         if (path == null) {
-            System.out.println("Need to insert a filePath. Format: [-reverse] [filepath]");
+            System.out.println("Need to insert a filePath. Format: " + RouterConfig.usage() + " [filepath]");
             return;
         }
 
         Router r = null;
-        Path neighborsFilePath = Paths.get(path);
         try {
             // Read file and create a router
-            List<String> allLines = Files.readAllLines(neighborsFilePath);
-            String myAddress = allLines.get(0);
-            String[] myFields = myAddress.split(" ");
-            String myIp = myFields[0];
-            int myPort = Integer.parseInt(myFields[1]);
-            r = new Router(myIp, myPort, reverse);
-
-            // Iterate through and add its neighbors
-            for (int i = 1; i < allLines.size(); i++) {
-                String[] fields = allLines.get(i).split(" ");
-                String ip = fields[0];
-                int port = Integer.parseInt(fields[1]);
-                int weight = Integer.parseInt(fields[2]);
-                r.addNeighbor(new Address(ip, port), weight);
-            }
+            RouterFile file = RouterFile.read(Paths.get(path));
+            r = new Router(file.address.ip, file.address.port, config);
+
+            // Add its neighbors
+            r.addNeighbors(file);
         } catch (IOException ex) {
             Logger.getLogger(Router.class.getName()).log(Level.SEVERE, null, ex);
         }
 
         if (r != null) {
             r.startAllThreads();
+            try {
+                r.awaitStop();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 }
@@ -0,0 +1,95 @@
+package dvroutingsimulator;
+
+/**
+ * Options of a router, read from the command line flags
+ *
+ * @author thanhvu
+ */
+class RouterConfig {
+
+    boolean reverse = false;                    // -reverse: poison reverse
+    MessageCodec codec = MessageCodec.TEXT;     // -binary: send the binary wire format
+    long holdDown = 0;                          // -holddown ms: window triggered updates are batched in
+    boolean delta = false;                      // -delta: triggered updates only carry changed entries
+    int datagramSize = 1024;                    // -mtu bytes: larger messages are sent in fragments
+    long metricsPeriod = 0;                     // -metrics s: print the metrics every s seconds
+    EventLog.Level logLevel = EventLog.Level.DEBUG; // -log level: least important events printed
+    int infinity = 0;                           // -infinity n: distance of unreachable destinations, 0 for unbounded
+    long holdTimer = 0;                         // -holdtimer ms: time a lost route ignores new routes, with -infinity
+    boolean ecmp = false;                       // -ecmp: spread flows across the next hops of equal cost
+    boolean virtualThreads = false;             // -threads virtual: run the router on virtual threads
+
+    static final int MIN_DATAGRAM_SIZE = 64;
+
+    /**
+     * Apply the flag at args[i] to this config
+     *
+     * @param args The command line arguments
+     * @param i The index of the flag
+     * @return The number of arguments used by the flag, 0 if args[i] is not
+     * a flag
+     * @throws RuntimeException If the value of the flag is missing or invalid
+     */
+    int parseFlag(String[] args, int i) {
+        switch (args[i]) {
+            case "-reverse":
+                reverse = true;
+                return 1;
+            case "-binary":
+                codec = MessageCodec.BINARY;
+                return 1;
+            case "-threads":
+                if (!args[i + 1].equals("platform") && !args[i + 1].equals("virtual")) {
+                    throw new IllegalArgumentException("-threads must be platform or virtual");
+                }
+                virtualThreads = args[i + 1].equals("virtual");
+                if (virtualThreads && !Threads.virtualAvailable()) {
+                    EventLog.shared().warn("virtual threads unavailable on this JVM (JDK 21 or later), using platform threads");
+                }
+                return 2;
+            case "-ecmp":
+                ecmp = true;
+                return 1;
+            case "-delta":
+                delta = true;
+                return 1;
+            case "-holddown":
+                holdDown = Long.parseLong(args[i + 1]);
+                return 2;
+            case "-infinity":
+                infinity = Integer.parseInt(args[i + 1]);
+                if (infinity < 2) {
+                    throw new IllegalArgumentException("-infinity must be at least 2");
+                }
+                return 2;
+            case "-holdtimer":
+                holdTimer = Long.parseLong(args[i + 1]);
+                return 2;
+            case "-log":
+                logLevel = EventLog.Level.valueOf(args[i + 1].toUpperCase());
+                return 2;
+            case "-metrics":
+                metricsPeriod = Long.parseLong(args[i + 1]);
+                return 2;
+            case "-mtu":
+                datagramSize = Integer.parseInt(args[i + 1]);
+                if (datagramSize < MIN_DATAGRAM_SIZE || datagramSize > Router.MAX_PACKET_SIZE) {
+                    throw new IllegalArgumentException("-mtu must be between " + MIN_DATAGRAM_SIZE
+                            + " and " + Router.MAX_PACKET_SIZE);
+                }
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Get the usage of the flags, for error messages
+     *
+     * @return The flags accepted by parseFlag
+     */
+    static String usage() {
+        return "[-reverse] [-binary] [-holddown ms] [-delta] [-mtu bytes] [-metrics s] [-log off|error|warn|info|debug]"
+                + " [-infinity n] [-holdtimer ms] [-ecmp] [-threads platform|virtual]";
+    }
+}
@@ -0,0 +1,125 @@
+package dvroutingsimulator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The content of a router input file: the router's own "ip port" on the first
+ * line, then one "ip port weight" line per neighbor. A topology file (*.topo)
+ * holds a whole network instead: one "router ip port" line per router, then
+ * one "link i j weight" line per link between the i-th and j-th routers,
+ * which become neighbors of each other.
+ *
+ * @author thanhvu
+ */
+class RouterFile {
+
+    final Address address;
+    final List<Address> neighbors;
+    final List<Integer> weights;
+
+    private RouterFile(Address address) {
+        this.address = address;
+        this.neighbors = new ArrayList<>();
+        this.weights = new ArrayList<>();
+    }
+
+    /**
+     * Read a router input file
+     *
+     * @param path The path of the file
+     * @return The router address and its neighbors
+     * @throws IOException If the file cannot be read
+     */
+    static RouterFile read(Path path) throws IOException {
+        List<String> allLines = Files.readAllLines(path);
+        String[] myFields = allLines.get(0).trim().split(" ");
+        RouterFile file = new RouterFile(Address.of(myFields[0], Integer.parseInt(myFields[1])));
+
+        // Iterate through and add its neighbors
+        for (int i = 1; i < allLines.size(); i++) {
+            String line = allLines.get(i).trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split(" ");
+            file.neighbors.add(Address.of(fields[0], Integer.parseInt(fields[1])));
+            file.weights.add(Integer.parseInt(fields[2]));
+        }
+        return file;
+    }
+
+    /**
+     * Read the routers of a path: a topology file if it ends with .topo,
+     * otherwise a router input file
+     *
+     * @param path The path of the file
+     * @return The routers of the file, in order
+     * @throws IOException If the file cannot be read
+     */
+    static List<RouterFile> readAll(Path path) throws IOException {
+        if (path.getFileName().toString().endsWith(".topo")) {
+            return readTopology(path);
+        }
+        return Collections.singletonList(read(path));
+    }
+
+    /**
+     * Read a topology file in one pass, lines starting with # are comments
+     *
+     * @param path The path of the file
+     * @return The routers of the file, in order
+     * @throws IOException If the file cannot be read or a line is malformed
+     */
+    static List<RouterFile> readTopology(Path path) throws IOException {
+        List<RouterFile> files = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            int number = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(" ");
+                try {
+                    if (fields[0].equals("router")) {
+                        files.add(new RouterFile(Address.of(fields[1], Integer.parseInt(fields[2]))));
+                    } else if (fields[0].equals("link")) {
+                        RouterFile a = files.get(Integer.parseInt(fields[1]));
+                        RouterFile b = files.get(Integer.parseInt(fields[2]));
+                        int weight = Integer.parseInt(fields[3]);
+                        a.neighbors.add(b.address);
+                        a.weights.add(weight);
+                        b.neighbors.add(a.address);
+                        b.weights.add(weight);
+                    } else {
+                        throw new IOException(path + ":" + number + ": unknown line: " + line);
+                    }
+                } catch (IndexOutOfBoundsException | NumberFormatException ex) {
+                    throw new IOException(path + ":" + number + ": malformed line: " + line);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Add the neighbors of the file to a router, from its event loop
+     *
+     * @param r The router created for this file
+     * @throws IOException Happens when DV is advertised
+     */
+    void addNeighborsTo(Router r) throws IOException {
+        for (int i = 0; i < neighbors.size(); i++) {
+            r.addNeighbor(neighbors.get(i), weights.get(i));
+        }
+    }
+}
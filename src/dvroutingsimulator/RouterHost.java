@@ -0,0 +1,244 @@
+package dvroutingsimulator;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many routers in one JVM over real UDP. The routers share one selector
+ * thread reading all their channels, the timer wheel, and a small pool of
+ * workers running their event loops; each router keeps its own state, only
+ * touched by its own loop. A router costs its tables and buffers instead of
+ * a JVM and a dozen threads.
+ *
+ * @author thanhvu
+ */
+final class RouterHost {
+
+    private final RouterConfig config;
+    private final SelectorLoop io;
+    private final ExecutorService workers;
+    private final Map<Integer, Router> routers;
+    private final Thread ioThread;
+
+    /**
+     * Create an empty host
+     *
+     * @param config The options of every router
+     * @param workerCount The number of threads running the event loops
+     * @throws IOException If the selector cannot be opened
+     */
+    RouterHost(RouterConfig config, int workerCount) throws IOException {
+        this.config = config;
+        this.io = new SelectorLoop();
+        final AtomicInteger count = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread t = new Thread(task, "router-worker-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.routers = new LinkedHashMap<>();
+        this.ioThread = new Thread(io, "router-io");
+        this.ioThread.setDaemon(true);
+    }
+
+    /**
+     * Create a router from its input file and add it to the host
+     *
+     * @param file The content of the router's input file
+     * @return The hosted router
+     * @throws IOException If its port cannot be bound
+     */
+    Router addRouter(RouterFile file) throws IOException {
+        SelectorLoop.Endpoint endpoint = io.open(file.address.port);
+        // virtual threads are cheap enough for each router to run its own loop
+        Router r = config.virtualThreads && Threads.virtualAvailable()
+                ? new Router(file.address, config, endpoint)
+                : new Router(file.address, config, endpoint, HashedWheelTimer.shared(), new EventLoop(workers));
+        endpoint.attach(r);
+        routers.put(file.address.port, r);
+        r.addNeighbors(file);
+        return r;
+    }
+
+    /**
+     * Start the selector thread and the timers of every router
+     */
+    void start() {
+        ioThread.start();
+        for (Router r : routers.values()) {
+            r.startHosted();
+        }
+    }
+
+    /**
+     * Run a console command: "port COMMAND ..." runs a router command on the
+     * router of that port, "PRINT" prints every router, "STOP" stops the host
+     *
+     * @param fields The fields of the command line
+     * @return false if the host has to stop
+     */
+    boolean command(final String[] fields) {
+        if (fields[0].equalsIgnoreCase("STOP")) {
+            return false;
+        }
+        if (fields[0].equalsIgnoreCase("PRINT")) {
+            for (final Router r : routers.values()) {
+                r.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        System.out.print(r.getAddress().toString() + " ");
+                        r.printDistVect();
+                    }
+                });
+            }
+            return true;
+        }
+        final Router r;
+        try {
+            r = routers.get(Integer.parseInt(fields[0]));
+        } catch (NumberFormatException ex) {
+            System.out.println("Wrong command format! Format: [port] PRINT|MSG|CHANGE|STOP ..., PRINT or STOP");
+            return true;
+        }
+        if (r == null || fields.length < 2) {
+            System.out.println("No router on port " + fields[0]);
+            return true;
+        }
+        final String[] tmp = new String[fields.length - 1];
+        System.arraycopy(fields, 1, tmp, 0, tmp.length);
+        if (tmp[0].equalsIgnoreCase("STOP")) {
+            // stop only that router, the others keep running
+            routers.remove(r.getAddress().port);
+            r.execute(new Runnable() {
+                @Override
+                public void run() {
+                    r.shutdown();
+                }
+            });
+            return true;
+        }
+        final ConsoleReader reader = new ConsoleReader(r, null);
+        r.execute(new Runnable() {
+            @Override
+            public void run() {
+                reader.command(tmp);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Wait until the selector thread stops, when the console has no more
+     * commands to read
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    void awaitStop() throws InterruptedException {
+        ioThread.join();
+    }
+
+    /**
+     * Stop every router, the selector thread and the workers
+     */
+    void shutdown() {
+        for (Router r : routers.values()) {
+            r.shutdown();
+        }
+        io.stop();
+        workers.shutdown();
+    }
+
+    /**
+     * Run the program
+     *
+     * @param args Command line argument, format
+     * "[router flags] [-workers n] path ..." where each path is a router
+     * input file, a topology file or a directory of them
+     */
+    public static void main(String[] args) {
+        String usage = "Format: " + RouterConfig.usage() + " [-workers n] [filepath or directory] ...";
+        RouterConfig config = new RouterConfig();
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        List<Path> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                int used = config.parseFlag(args, i);
+                if (used > 0) {
+                    i += used - 1;
+                } else if (args[i].equals("-workers")) {
+                    workerCount = Integer.parseInt(args[++i]);
+                } else if (Files.isDirectory(Paths.get(args[i]))) {
+                    try (DirectoryStream<Path> dir = Files.newDirectoryStream(Paths.get(args[i]), "*.{txt,topo}")) {
+                        for (Path p : dir) {
+                            files.add(p);
+                        }
+                    }
+                } else {
+                    files.add(Paths.get(args[i]));
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            System.out.println("Wrong arguments. " + usage);
+            return;
+        }
+        if (files.isEmpty() || workerCount < 1) {
+            System.out.println("Need at least 1 router file and 1 worker. " + usage);
+            return;
+        }
+        Collections.sort(files);
+        EventLog log = EventLog.shared();
+        log.setLevel(config.logLevel);
+
+        RouterHost host = null;
+        try {
+            host = new RouterHost(config, workerCount);
+            for (Path p : files) {
+                for (RouterFile file : RouterFile.readAll(p)) {
+                    host.addRouter(file);
+                }
+            }
+            host.start();
+            System.out.println(host.routers.size() + " routers hosted on " + workerCount + " workers");
+
+            Scanner sc = new Scanner(System.in);
+            while (true) {
+                if (!sc.hasNextLine()) {
+                    host.awaitStop(); // no console, run until killed
+                    break;
+                }
+                if (!host.command(sc.nextLine().trim().split(" "))) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            log.error("ERROR: " + ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (host != null) {
+                host.shutdown();
+            }
+            log.flush(1000);
+        }
+        System.exit(0);
+    }
+}
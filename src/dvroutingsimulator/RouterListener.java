@@ -1,9 +1,9 @@
 package dvroutingsimulator;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,19 +33,96 @@ public class RouterListener implements Runnable {
     @Override
     public void run() {
         try {
-            DatagramSocket listeningSocket = new DatagramSocket(r.getAddress().port);
-            int maxSize = 1024;
+            Transport transport = r.getTransport();
+            // any datagram fits, larger messages arrive in fragments
+            int maxSize = Router.MAX_PACKET_SIZE;
+            // one buffer for the life of the thread, each packet is decoded in place
+            ByteBuffer receiveData = ByteBuffer.allocateDirect(maxSize);
             while (running) {
-                byte[] receiveData = new byte[maxSize];
-                DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
-                listeningSocket.receive(receivePacket);
-                String protocol = new String(receivePacket.getData()).trim();
-                this.handleProtocol(protocol);
+                receiveData.clear();
+                SocketAddress sender = transport.receive(receiveData);
+                if (sender == null) {
+                    return;
+                }
+                receiveData.flip();
+                handlePacket(receiveData, sender);
             }
-        } catch (SocketException ex) {
+        } catch (IOException ex) {
             Logger.getLogger(RouterListener.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Decode a packet and post the message to the event loop of the router.
+     * The packet is decoded on the calling thread, so the buffer can be
+     * reused as soon as this returns. Content messages are handled right
+     * away: forwarding only reads the published forwarding table, and the
+     * ones in transit are forwarded without being decoded.
+     *
+     * @param packet The bytes of exactly one packet
+     * @param sender The address the packet came from
+     */
+    void handlePacket(ByteBuffer packet, SocketAddress sender) {
+        RouterMetrics metrics = r.getMetrics();
+        metrics.receivedBytes(packet.remaining());
+        final Message m;
+        try {
+            if (Fragmenter.isFragment(packet)) {
+                packet = r.getReassembler().add(packet, sender);
+                if (packet == null) {
+                    return; // wait for the other fragments
+                }
+            }
+            if (r.forwardPacket(packet)) {
+                metrics.received(MsgType.CONTENT);
+                return;
+            }
+            m = MessageCodec.decodeAny(packet);
+        } catch (RuntimeException ex) {
+            EventLog.shared().error("ERROR: " + ex.getMessage());
+            return;
         } catch (IOException ex) {
             Logger.getLogger(RouterListener.class.getName()).log(Level.SEVERE, null, ex);
+            return;
+        }
+        metrics.received(m.getType());
+        if (m.getType() == MsgType.CONTENT) {
+            try {
+                handleContent((ContentMessage) m);
+            } catch (IOException ex) {
+                Logger.getLogger(RouterListener.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            return;
+        }
+        r.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    handleMessage(m);
+                } catch (IOException ex) {
+                    Logger.getLogger(RouterListener.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Pass a message to the handler of its type, on the event loop
+     *
+     * @param m The message received
+     * @throws IOException If an answer to the message cannot be sent
+     */
+    private void handleMessage(Message m) throws IOException {
+        switch (m.getType()) {
+            case DV:
+                handleDV((DVMessage) m);
+                break;
+            case WEIGHT:
+                handleWeight((WeightMessage) m);
+                break;
+            case DVDELTA:
+                handleDelta((DVDeltaMessage) m);
+                break;
         }
     }
 
@@ -57,62 +134,88 @@ public class RouterListener implements Runnable {
     }
 
     /**
-     * Handle the protocol once it's received, convert to a message, and perform
-     * appropriate action
+     * Deliver a content message destined to this router, forward it otherwise
      *
-     * @param protocol The protocol received
+     * @param cMsg The message received
      */
-    private void handleProtocol(String protocol) throws IOException {
-        MsgType msgType = Message.getType(protocol);
-        switch (msgType) {
-            case CONTENT:
-                ContentMessage cMsg = new ContentMessage(protocol);
-
-                //if router is the recipient
-                if (cMsg.getDstAddress().equals(r.getAddress())) {
-                    r.debugPrintReceiveMsg(cMsg);
-                } else { //else if message should be forwarded
-                    r.forwardMessage(cMsg);
-                }
-                return;
-            case DV:
-                DVMessage dMsg = new DVMessage(protocol);
-                r.debugPrintReceiveMsg(dMsg);
-                Address nAdd = dMsg.getSrcAddress();
+    private void handleContent(ContentMessage cMsg) throws IOException {
+        //if router is the recipient
+        if (cMsg.getDstAddress().equals(r.getAddress())) {
+            r.debugPrintReceiveMsg(cMsg);
+        } else { //else if message should be forwarded
+            r.forwardMessage(cMsg);
+        }
+    }
 
-                //check if neighbor is added, add if yes
-                if (!r.containsNeighbor(nAdd)) {
-                    r.addNeighbor(nAdd);
-                }
+    /**
+     * Store the distance vector of a neighbor, and rerun the DV algorithm for
+     * the destinations it changed
+     *
+     * @param dMsg The message received
+     */
+    private void handleDV(DVMessage dMsg) throws IOException {
+        r.debugPrintReceiveMsg(dMsg);
+        Address nAdd = dMsg.getSrcAddress();
 
-                // set the sender neighbor's status to be updated
-                r.restartNeighborTimer(nAdd);
+        //check if neighbor is added, add if yes
+        if (!r.containsNeighbor(nAdd)) {
+            r.addNeighbor(nAdd);
+        }
 
-                if (r.updateDV(dMsg.getSrcAddress(), dMsg.getDistVect())) {
-                    if (r.runDVAlgorithm()) {
-                        r.advertiseDV(false);
-                    }
-                }
-                return;
+        // set the sender neighbor's status to be updated
+        r.restartNeighborTimer(nAdd);
 
-            case WEIGHT:
-                WeightMessage wMsg = new WeightMessage(protocol);
-                r.debugPrintReceiveMsg(wMsg);
-                //check if the message comes from a neighbor
-                Address neiAdd = wMsg.getSrcAddress();
-
-                //if address is not from the neighbor, it means that a neighbor just joins the network
-                if (!r.containsNeighbor(neiAdd)) {
-                    r.addNeighbor(neiAdd, wMsg.getWeight());
-                } // else, update weight of the neighbor
-                else {
-                    if (r.updateWeight(wMsg.getSrcAddress(), wMsg.getWeight())) {
-                        if (r.runDVAlgorithm()) {
-                            r.advertiseDV(false);
-                        }
-                    }
+        Set<Address> delta = r.updateDV(dMsg.getSrcAddress(), dMsg.getDistVect(), dMsg.getSeq());
+        if (!delta.isEmpty() && !r.runDVAlgorithm(delta).isEmpty()) {
+            r.triggerUpdate();
+        }
+    }
+
+    /**
+     * Apply the changes advertised by a neighbor on its stored distance
+     * vector, and rerun the DV algorithm for them
+     *
+     * @param dMsg The message received
+     */
+    private void handleDelta(DVDeltaMessage dMsg) throws IOException {
+        r.debugPrintReceiveMsg(dMsg);
+        Address nAdd = dMsg.getSrcAddress();
+
+        //check if neighbor is added, add if yes
+        if (!r.containsNeighbor(nAdd)) {
+            r.addNeighbor(nAdd);
+        }
+
+        // set the sender neighbor's status to be updated
+        r.restartNeighborTimer(nAdd);
+
+        Set<Address> delta = r.applyDelta(nAdd, dMsg);
+        if (!delta.isEmpty() && !r.runDVAlgorithm(delta).isEmpty()) {
+            r.triggerUpdate();
+        }
+    }
+
+    /**
+     * Add a neighbor that just joined the network, or update the weight of
+     * the link to an existing one
+     *
+     * @param wMsg The message received
+     */
+    private void handleWeight(WeightMessage wMsg) throws IOException {
+        r.debugPrintReceiveMsg(wMsg);
+        //check if the message comes from a neighbor
+        Address neiAdd = wMsg.getSrcAddress();
+
+        //if address is not from the neighbor, it means that a neighbor just joins the network
+        if (!r.containsNeighbor(neiAdd)) {
+            r.addNeighbor(neiAdd, wMsg.getWeight());
+        } // else, update weight of the neighbor
+        else {
+            if (r.updateWeight(wMsg.getSrcAddress(), wMsg.getWeight())) {
+                if (!r.runDVAlgorithm(r.affectedBy(neiAdd)).isEmpty()) {
+                    r.triggerUpdate();
                 }
-                return;
+            }
         }
     }
 
@@ -0,0 +1,296 @@
+package dvroutingsimulator;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The measurements of a router: message and byte counters, DV algorithm
+ * latency, advertisement fan-out, neighbor drops and convergence time.
+ * Counters can be updated from any thread.
+ *
+ * Convergence is seen from the router: the time from the last change of one
+ * of its links to the last change of its routes that followed. Routes have
+ * settled once a whole advertisement period passes without a change; route
+ * changes after that come from elsewhere in the network and are not counted.
+ *
+ * @author thanhvu
+ */
+class RouterMetrics implements RouterMetricsMXBean {
+
+    private static final long SETTLED = AutoUpdater.T * 1000; // quiet time after which routes have settled, in ms
+
+    private final Address address;
+    private final Scheduler clock;
+
+    private final AtomicLongArray sent;
+    private final AtomicLongArray received;
+    private final AtomicLong bytesSent;
+    private final AtomicLong bytesReceived;
+    private final Histogram recompute;
+    private final Histogram fanOut;
+    private final AtomicLong drops;
+    private final AtomicLong topologyChanges;
+
+    // convergence, only updated by the event loop
+    private volatile long topologyChangedAt;    // -1 once the routes settled
+    private volatile long routesChangedAt;
+    private volatile long lastConvergence;
+    private volatile long maxConvergence;
+
+    private ObjectName name;
+
+    /**
+     * Create the metrics of a router
+     *
+     * @param address The address of the router
+     * @param clock The scheduler whose clock times the convergence
+     */
+    RouterMetrics(Address address, Scheduler clock) {
+        this.address = address;
+        this.clock = clock;
+        this.sent = new AtomicLongArray(MsgType.values().length);
+        this.received = new AtomicLongArray(MsgType.values().length);
+        this.bytesSent = new AtomicLong();
+        this.bytesReceived = new AtomicLong();
+        this.recompute = new Histogram();
+        this.fanOut = new Histogram();
+        this.drops = new AtomicLong();
+        this.topologyChanges = new AtomicLong();
+        this.topologyChangedAt = -1;
+        this.routesChangedAt = -1;
+        this.lastConvergence = -1;
+        this.maxConvergence = 0;
+    }
+
+    /**
+     * Count a message sent
+     *
+     * @param type The type of the message
+     * @param bytes The size of the datagrams that carried it, whole message or
+     * fragments
+     */
+    void sent(MsgType type, int bytes) {
+        sent.incrementAndGet(type.ordinal());
+        bytesSent.addAndGet(bytes);
+    }
+
+    /**
+     * Count a datagram received, whole message or fragment
+     *
+     * @param bytes The size of the datagram
+     */
+    void receivedBytes(int bytes) {
+        bytesReceived.addAndGet(bytes);
+    }
+
+    /**
+     * Count a message received
+     *
+     * @param type The type of the message
+     */
+    void received(MsgType type) {
+        received.incrementAndGet(type.ordinal());
+    }
+
+    /**
+     * Record a run of the DV algorithm
+     *
+     * @param nanos The duration of the run
+     */
+    void recomputed(long nanos) {
+        recompute.record(nanos / 1000);
+    }
+
+    /**
+     * Record an advertisement round
+     *
+     * @param neighbors The number of neighbors it was sent to
+     */
+    void advertised(int neighbors) {
+        fanOut.record(neighbors);
+    }
+
+    /**
+     * Count a neighbor dropped
+     */
+    void dropped() {
+        drops.incrementAndGet();
+    }
+
+    /**
+     * Record a change of a link of the router, starting a convergence
+     */
+    void topologyChanged() {
+        topologyChanges.incrementAndGet();
+        topologyChangedAt = clock.now();
+        lastConvergence = 0; // until the routes change
+    }
+
+    /**
+     * Record a change of the routes of the router, part of the convergence
+     * after the last topology change unless the routes had settled since
+     */
+    void routesChanged() {
+        long now = clock.now();
+        long changed = topologyChangedAt;
+        if (changed >= 0) {
+            if (now - Math.max(changed, routesChangedAt) > SETTLED) {
+                topologyChangedAt = -1;
+            } else {
+                lastConvergence = now - changed;
+                maxConvergence = Math.max(maxConvergence, lastConvergence);
+            }
+        }
+        routesChangedAt = now;
+    }
+
+    /**
+     * Register these metrics with the platform MBean server, under
+     * dvroutingsimulator:type=Router,name="ip:port"
+     */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            name = new ObjectName("dvroutingsimulator:type=Router,name=" + ObjectName.quote(address.toString()));
+            server.registerMBean(this, name);
+        } catch (JMException ex) {
+            name = null;
+            Logger.getLogger(RouterMetrics.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    /**
+     * Remove these metrics from the platform MBean server, if registered
+     */
+    void unregister() {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException ex) {
+            Logger.getLogger(RouterMetrics.class.getName()).log(Level.WARNING, null, ex);
+        }
+        name = null;
+    }
+
+    @Override
+    public Map<String, Long> getMessagesSent() {
+        return byType(sent);
+    }
+
+    @Override
+    public Map<String, Long> getMessagesReceived() {
+        return byType(received);
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public long getRecomputations() {
+        return recompute.count();
+    }
+
+    @Override
+    public Map<String, Long> getRecomputeLatencyMicros() {
+        return summary(recompute);
+    }
+
+    @Override
+    public long getAdvertisements() {
+        return fanOut.count();
+    }
+
+    @Override
+    public Map<String, Long> getAdvertisementFanOut() {
+        return summary(fanOut);
+    }
+
+    @Override
+    public long getNeighborDrops() {
+        return drops.get();
+    }
+
+    @Override
+    public long getTopologyChanges() {
+        return topologyChanges.get();
+    }
+
+    @Override
+    public long getLastConvergenceMillis() {
+        return lastConvergence;
+    }
+
+    @Override
+    public long getMaxConvergenceMillis() {
+        return maxConvergence;
+    }
+
+    @Override
+    public String toJson() {
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"router\":\"").append(address).append('"');
+        json.append(",\"time\":").append(clock.now());
+        appendMap(json, "messagesSent", getMessagesSent());
+        appendMap(json, "messagesReceived", getMessagesReceived());
+        json.append(",\"bytesSent\":").append(getBytesSent());
+        json.append(",\"bytesReceived\":").append(getBytesReceived());
+        json.append(",\"recomputations\":").append(getRecomputations());
+        appendMap(json, "recomputeLatencyMicros", getRecomputeLatencyMicros());
+        json.append(",\"advertisements\":").append(getAdvertisements());
+        appendMap(json, "advertisementFanOut", getAdvertisementFanOut());
+        json.append(",\"neighborDrops\":").append(getNeighborDrops());
+        json.append(",\"topologyChanges\":").append(getTopologyChanges());
+        json.append(",\"lastConvergenceMillis\":").append(getLastConvergenceMillis());
+        json.append(",\"maxConvergenceMillis\":").append(getMaxConvergenceMillis());
+        return json.append('}').toString();
+    }
+
+    private static Map<String, Long> byType(AtomicLongArray counts) {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (MsgType t : MsgType.values()) {
+            map.put(t.name(), counts.get(t.ordinal()));
+        }
+        return map;
+    }
+
+    private static Map<String, Long> summary(Histogram h) {
+        Map<String, Long> map = new LinkedHashMap<>();
+        long count = h.count();
+        map.put("mean", count == 0 ? 0 : h.sum() / count);
+        map.put("p50", h.percentile(50));
+        map.put("p90", h.percentile(90));
+        map.put("p99", h.percentile(99));
+        map.put("max", h.max());
+        return map;
+    }
+
+    private static void appendMap(StringBuilder json, String key, Map<String, Long> map) {
+        json.append(",\"").append(key).append("\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> e : map.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append('"').append(e.getKey()).append("\":").append(e.getValue());
+        }
+        json.append('}');
+    }
+}
@@ -0,0 +1,80 @@
+package dvroutingsimulator;
+
+import java.util.Map;
+
+/**
+ * The measurements of a router, as exposed through JMX
+ *
+ * @author thanhvu
+ */
+public interface RouterMetricsMXBean {
+
+    /**
+     * @return The number of messages sent, by message type
+     */
+    Map<String, Long> getMessagesSent();
+
+    /**
+     * @return The number of messages received, by message type
+     */
+    Map<String, Long> getMessagesReceived();
+
+    /**
+     * @return The bytes of all the datagrams sent
+     */
+    long getBytesSent();
+
+    /**
+     * @return The bytes of all the datagrams received
+     */
+    long getBytesReceived();
+
+    /**
+     * @return The number of runs of the DV algorithm
+     */
+    long getRecomputations();
+
+    /**
+     * @return The latency of the DV algorithm in microseconds: mean, p50,
+     * p90, p99 and max
+     */
+    Map<String, Long> getRecomputeLatencyMicros();
+
+    /**
+     * @return The number of advertisement rounds
+     */
+    long getAdvertisements();
+
+    /**
+     * @return The number of neighbors per advertisement round: mean, p50,
+     * p90, p99 and max
+     */
+    Map<String, Long> getAdvertisementFanOut();
+
+    /**
+     * @return The number of neighbors dropped for not advertising
+     */
+    long getNeighborDrops();
+
+    /**
+     * @return The number of topology changes seen by the router: links added,
+     * dropped or reweighted
+     */
+    long getTopologyChanges();
+
+    /**
+     * @return The time from the last topology change to the last route change
+     * before the routes settled, in milliseconds, -1 if no topology change yet
+     */
+    long getLastConvergenceMillis();
+
+    /**
+     * @return The longest convergence time seen, in milliseconds
+     */
+    long getMaxConvergenceMillis();
+
+    /**
+     * @return All the measurements as one JSON object
+     */
+    String toJson();
+}
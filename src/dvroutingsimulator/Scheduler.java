@@ -0,0 +1,53 @@
+package dvroutingsimulator;
+
+/**
+ * Runs the timed tasks of a router: periodic advertisements and neighbor
+ * timeouts. Times are in milliseconds, on the clock of the scheduler, which
+ * is either the wall clock or the virtual clock of a simulation.
+ *
+ * @author thanhvu
+ */
+interface Scheduler {
+
+    /**
+     * A scheduled task that can still be cancelled
+     */
+    interface Cancellable {
+
+        /**
+         * Prevent the task from running again
+         */
+        void cancel();
+    }
+
+    /**
+     * Get the current time of the scheduler's clock
+     *
+     * @return The current time in milliseconds
+     */
+    long now();
+
+    /**
+     * Run a task once after a delay
+     *
+     * @param task The task to run
+     * @param delay The delay in milliseconds
+     * @return A handle to cancel the task
+     */
+    Cancellable schedule(Runnable task, long delay);
+
+    /**
+     * Run a task repeatedly, the first time after a delay
+     *
+     * @param task The task to run
+     * @param delay The delay before the first run, in milliseconds
+     * @param period The time between two runs, in milliseconds
+     * @return A handle to cancel the task
+     */
+    Cancellable scheduleAtFixedRate(Runnable task, long delay, long period);
+
+    /**
+     * Cancel all tasks and release the resources of the scheduler
+     */
+    void shutdown();
+}
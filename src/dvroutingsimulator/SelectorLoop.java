@@ -0,0 +1,181 @@
+package dvroutingsimulator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reads the UDP channels of all the routers hosted in a JVM from one thread,
+ * through a single selector, instead of one listener thread per router. Each
+ * packet is handed to its router on this thread, the same way a listener
+ * does: decoded in place, then posted to the event loop of the router.
+ *
+ * @author thanhvu
+ */
+final class SelectorLoop implements Runnable {
+
+    private static final int BATCH = 64; // packets read from a channel before moving to the next one
+
+    private final Selector selector;
+    private final Queue<Endpoint> pending;
+    private volatile boolean running;
+
+    /**
+     * The channel of one router, sending directly and receiving through the
+     * selector thread
+     */
+    final class Endpoint implements Transport {
+
+        private final DatagramChannel channel;
+        private Router router;
+
+        private Endpoint(DatagramChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Start delivering the packets received on this channel to a router
+         *
+         * @param r The router owning the channel
+         */
+        void attach(Router r) {
+            router = r;
+            pending.add(this);
+            selector.wakeup();
+        }
+
+        @Override
+        public void send(ByteBuffer packet, Neighbor dst) throws IOException {
+            if (channel.send(packet, dst.getSocketAddress()) == 0) {
+                EventLog.shared().error("ERROR: send buffer full, packet to " + dst.getAddress().toString() + " dropped");
+            }
+        }
+
+        /**
+         * Packets are pushed to the router by the selector thread, there is
+         * nothing to wait for
+         */
+        @Override
+        public SocketAddress receive(ByteBuffer dst) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close(); // also cancels its key
+            } catch (IOException ex) {
+                EventLog.shared().error("ERROR: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Open the selector, its thread is started by the caller
+     *
+     * @throws IOException If the selector cannot be opened
+     */
+    SelectorLoop() throws IOException {
+        this.selector = Selector.open();
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.running = true;
+    }
+
+    /**
+     * Bind the channel of a router, read by this loop once attached to the
+     * router
+     *
+     * @param port The port of the router
+     * @return The transport of the router
+     * @throws IOException If the port cannot be bound
+     */
+    Endpoint open(int port) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        channel.configureBlocking(false);
+        return new Endpoint(channel);
+    }
+
+    /**
+     * Read the channels until the loop is stopped
+     */
+    @Override
+    public void run() {
+        // one buffer for the life of the thread, each packet is decoded in place
+        ByteBuffer receiveData = ByteBuffer.allocateDirect(Router.MAX_PACKET_SIZE);
+        try {
+            while (running) {
+                registerPending();
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        read((Endpoint) key.attachment(), receiveData);
+                    }
+                }
+            }
+        } catch (ClosedSelectorException ex) {
+            // closed while waiting
+        } catch (IOException ex) {
+            EventLog.shared().error("ERROR: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Register the channels attached since the last select, from this thread,
+     * since registering blocks while the selector is selecting
+     */
+    private void registerPending() throws IOException {
+        Endpoint e;
+        while ((e = pending.poll()) != null) {
+            if (e.channel.isOpen()) {
+                e.channel.register(selector, SelectionKey.OP_READ, e);
+            }
+        }
+    }
+
+    /**
+     * Hand the packets waiting on a channel to its router, at most BATCH of
+     * them so a busy router does not starve the others
+     */
+    private void read(Endpoint e, ByteBuffer receiveData) {
+        for (int i = 0; i < BATCH; i++) {
+            receiveData.clear();
+            SocketAddress sender;
+            try {
+                sender = e.channel.receive(receiveData);
+                if (sender == null) {
+                    return;
+                }
+            } catch (IOException ex) {
+                EventLog.shared().error("ERROR: " + ex.getMessage());
+                return;
+            }
+            receiveData.flip();
+            e.router.receive(receiveData, sender);
+        }
+    }
+
+    /**
+     * Stop the loop and close the selector, the channels are closed by their
+     * routers
+     */
+    void stop() {
+        running = false;
+        try {
+            selector.close();
+        } catch (IOException ex) {
+            EventLog.shared().error("ERROR: " + ex.getMessage());
+        }
+    }
+}
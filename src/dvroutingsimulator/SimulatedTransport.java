@@ -0,0 +1,48 @@
+package dvroutingsimulator;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * In-memory transport of a router inside a Simulator: a sent packet is copied
+ * and delivered to the destination router by an event on the virtual clock
+ *
+ * @author thanhvu
+ */
+class SimulatedTransport implements Transport {
+
+    private final Simulator sim;
+    private final SocketAddress self;
+
+    /**
+     * Create the transport of one simulated router
+     *
+     * @param sim The simulator delivering the packets
+     * @param address The address of the router, the sender of its packets
+     */
+    SimulatedTransport(Simulator sim, Address address) {
+        this.sim = sim;
+        this.self = InetSocketAddress.createUnresolved(address.ip, address.port);
+    }
+
+    @Override
+    public void send(ByteBuffer packet, Neighbor dst) {
+        ByteBuffer copy = ByteBuffer.allocate(packet.remaining());
+        copy.put(packet);
+        copy.flip();
+        sim.deliver(copy, self, dst.getAddress());
+    }
+
+    /**
+     * Packets are pushed to simulated routers, there is nothing to wait for
+     */
+    @Override
+    public SocketAddress receive(ByteBuffer dst) {
+        return null;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,114 @@
+package dvroutingsimulator;
+
+import java.util.PriorityQueue;
+
+/**
+ * Scheduler on a virtual clock. Tasks are events in a priority queue, ordered
+ * by time and then by the order they were scheduled in, and run one after the
+ * other on the calling thread: the clock jumps straight to the next event.
+ *
+ * @author thanhvu
+ */
+class SimulationScheduler implements Scheduler {
+
+    private final PriorityQueue<Event> events;
+    private long now;
+    private long seq;
+    private long processed;
+
+    /**
+     * Create a scheduler with its clock at 0
+     */
+    SimulationScheduler() {
+        events = new PriorityQueue<>();
+        now = 0;
+        seq = 0;
+        processed = 0;
+    }
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    @Override
+    public Cancellable schedule(Runnable task, long delay) {
+        Event e = new Event(task, now + Math.max(0, delay), 0, seq++);
+        events.add(e);
+        return e;
+    }
+
+    @Override
+    public Cancellable scheduleAtFixedRate(Runnable task, long delay, long period) {
+        Event e = new Event(task, now + Math.max(0, delay), period, seq++);
+        events.add(e);
+        return e;
+    }
+
+    @Override
+    public void shutdown() {
+        events.clear();
+    }
+
+    /**
+     * Run the events in time order until the queue is empty or the next event
+     * is later than a time limit. The clock is left at the time limit.
+     *
+     * @param until The time limit in milliseconds
+     */
+    void runUntil(long until) {
+        while (!events.isEmpty() && events.peek().time <= until) {
+            Event e = events.poll();
+            if (e.cancelled) {
+                continue;
+            }
+            now = e.time;
+            if (e.period > 0) {
+                e.time += e.period;
+                e.seq = seq++;
+                events.add(e);
+            }
+            processed++;
+            e.task.run();
+        }
+        now = Math.max(now, until);
+    }
+
+    /**
+     * Get the number of events run so far
+     *
+     * @return The number of events run
+     */
+    long processedEvents() {
+        return processed;
+    }
+
+    private static class Event implements Comparable<Event>, Cancellable {
+
+        private final Runnable task;
+        private final long period;
+        private long time;
+        private long seq;
+        private boolean cancelled;
+
+        Event(Runnable task, long time, long period, long seq) {
+            this.task = task;
+            this.time = time;
+            this.period = period;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            if (time != o.time) {
+                return time < o.time ? -1 : 1;
+            }
+            return Long.compare(seq, o.seq);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
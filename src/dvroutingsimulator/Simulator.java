@@ -0,0 +1,249 @@
+package dvroutingsimulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Run many routers in one JVM, on an in-memory transport and a virtual clock,
+ * so that a network converges as fast as the CPU allows instead of in
+ * AutoUpdater.T wall-clock rounds
+ *
+ * @author thanhvu
+ */
+public class Simulator {
+
+    private final SimulationScheduler scheduler;
+    private final Map<Address, Router> routers;
+    private final RouterConfig config;
+    private final long latency;
+    private long delivered;
+    private long lost;
+
+    /**
+     * Create an empty simulation
+     *
+     * @param config The options of every router
+     * @param latency The delay of every link, in milliseconds
+     */
+    Simulator(RouterConfig config, long latency) {
+        this.scheduler = new SimulationScheduler();
+        this.routers = new LinkedHashMap<>();
+        this.config = config;
+        this.latency = latency;
+        this.delivered = 0;
+        this.lost = 0;
+    }
+
+    /**
+     * Create a router from its input file and add it to the simulation
+     *
+     * @param file The content of the router's input file
+     * @return The simulated router
+     * @throws IOException Happens when DV is advertised
+     */
+    Router addRouter(RouterFile file) throws IOException {
+        Router r = new Router(file.address, config, new SimulatedTransport(this, file.address), scheduler);
+        routers.put(file.address, r);
+        file.addNeighborsTo(r);
+        return r;
+    }
+
+    /**
+     * Take a router out of the simulation, as if it crashed: it stops
+     * advertising and packets sent to it are lost
+     *
+     * @param a The address of the router
+     */
+    void removeRouter(Address a) {
+        Router r = routers.remove(a);
+        if (r != null) {
+            r.shutdown();
+        }
+    }
+
+    /**
+     * Take the routers on a port out of the simulation at a virtual time, as
+     * if they crashed then
+     *
+     * @param port The port of the routers
+     * @param at The virtual time of the failure, in milliseconds
+     */
+    void failAt(final int port, long at) {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                for (Address a : new ArrayList<>(routers.keySet())) {
+                    if (a.port == port) {
+                        removeRouter(a);
+                    }
+                }
+            }
+        }, at - scheduler.now());
+    }
+
+    /**
+     * Deliver a packet to a router after the link latency. Packets to an
+     * address with no router are lost, like UDP packets to a closed port.
+     *
+     * @param packet The bytes of the packet
+     * @param sender The address of the sending router
+     * @param dst The address of the destination router
+     */
+    void deliver(final ByteBuffer packet, final SocketAddress sender, final Address dst) {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                Router r = routers.get(dst);
+                if (r == null) {
+                    lost++;
+                    return;
+                }
+                delivered++;
+                r.receive(packet, sender);
+            }
+        }, latency);
+    }
+
+    /**
+     * Start every router and run the simulation up to a virtual time
+     *
+     * @param until The virtual time to stop at, in milliseconds
+     */
+    void run(long until) {
+        for (Router r : routers.values()) {
+            r.startSimulated();
+        }
+        scheduler.runUntil(until);
+    }
+
+    /**
+     * Get the routers of the simulation
+     *
+     * @return The routers by address, in the order they were added
+     */
+    Map<Address, Router> getRouters() {
+        return routers;
+    }
+
+    /**
+     * Get the scheduler running the virtual clock
+     *
+     * @return The scheduler of the simulation
+     */
+    SimulationScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Run the program
+     *
+     * @param args Command line argument, format
+     * "[router flags] [-time seconds] [-latency ms] [-fail port@seconds]
+     * [-verbose] path ..." where each path is a router input file, a topology
+     * file or a directory of them
+     */
+    public static void main(String[] args) {
+        String usage = "Format: " + RouterConfig.usage()
+                + " [-time seconds] [-latency ms] [-fail port@seconds] [-verbose] [filepath or directory] ...";
+        RouterConfig config = new RouterConfig();
+        long time = 5 * AutoUpdater.T;
+        long latency = 1;
+        boolean verbose = false;
+        Map<Integer, Long> failures = new LinkedHashMap<>();
+        List<Path> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                int used = config.parseFlag(args, i);
+                if (used > 0) {
+                    i += used - 1;
+                } else if (args[i].equals("-time")) {
+                    time = Long.parseLong(args[++i]);
+                } else if (args[i].equals("-latency")) {
+                    latency = Long.parseLong(args[++i]);
+                } else if (args[i].equals("-fail")) {
+                    String failure = args[++i];
+                    int at = failure.indexOf('@');
+                    failures.put(Integer.parseInt(failure.substring(0, at)),
+                            Long.parseLong(failure.substring(at + 1)));
+                } else if (args[i].equals("-verbose")) {
+                    verbose = true;
+                } else if (Files.isDirectory(Paths.get(args[i]))) {
+                    try (DirectoryStream<Path> dir = Files.newDirectoryStream(Paths.get(args[i]), "*.{txt,topo}")) {
+                        for (Path p : dir) {
+                            files.add(p);
+                        }
+                    }
+                } else {
+                    files.add(Paths.get(args[i]));
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            System.out.println("Wrong arguments. " + usage);
+            return;
+        }
+        if (files.isEmpty()) {
+            System.out.println("Need at least 1 router file. " + usage);
+            return;
+        }
+        Collections.sort(files);
+
+        PrintStream out = System.out;
+        EventLog log = EventLog.shared();
+        log.setLevel(verbose ? config.logLevel : EventLog.Level.OFF);
+        if (!verbose) {
+            // the routers log every event, keep only the summary
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            }));
+        }
+
+        Simulator sim = new Simulator(config, latency);
+        long start = System.nanoTime();
+        try {
+            for (Path p : files) {
+                for (RouterFile file : RouterFile.readAll(p)) {
+                    sim.addRouter(file);
+                }
+            }
+            for (Map.Entry<Integer, Long> failure : failures.entrySet()) {
+                sim.failAt(failure.getKey(), failure.getValue() * 1000);
+            }
+            sim.run(time * 1000);
+        } catch (IOException ex) {
+            Logger.getLogger(Simulator.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            log.flush(10000);
+            System.setOut(out);
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+
+        for (Router r : sim.routers.values()) {
+            System.out.print(r.getAddress().toString() + " ");
+            r.printDistVect();
+        }
+        if (config.metricsPeriod > 0) {
+            for (Router r : sim.routers.values()) {
+                System.out.println("METRICS " + r.getMetrics().toJson());
+            }
+        }
+        System.out.println(sim.routers.size() + " routers, " + time + "s simulated in " + elapsed + "ms, "
+                + sim.scheduler.processedEvents() + " events, "
+                + sim.delivered + " packets delivered, " + sim.lost + " lost");
+    }
+}
@@ -0,0 +1,402 @@
+package dvroutingsimulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The original text wire format: fields joined by Message.DLM, as produced by
+ * the toString methods of the messages. Decoding scans the received bytes
+ * once, in place: numbers and IPv4 literals are parsed straight from the
+ * buffer, and only the content of a CONTENT message becomes a String.
+ *
+ * @author thanhvu
+ */
+class TextCodec extends MessageCodec {
+
+    private static final byte[] DLM = Message.DLM.getBytes(StandardCharsets.US_ASCII);
+    private static final byte INTER_DLM = ';'; // between DV entries
+    private static final byte INTRA_DLM = ':'; // inside a DV entry
+    private static final byte PATH_DLM = (byte) ContentMessage.pDLM.charAt(0);
+    private static final byte IP_PORT_DLM = (byte) ContentMessage.iDLM.charAt(0);
+
+    @Override
+    void encode(Message m, ByteBuffer out) {
+        m.writeTo(out);
+    }
+
+    @Override
+    void encodeVector(DistanceVector dv, BitSet poisoned, int poison, ByteBuffer out) {
+        try {
+            dv.writeTo(new ByteBufferAppender(out), poisoned, poison);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // a ByteBufferAppender does not throw it
+        }
+    }
+
+    /**
+     * Text format: same as DVMessage, "DV[DLM]srcIP[DLM]srcPort[DLM]
+     * dstIP[DLM]dstPort[DLM]distanceVector[DLM]seq[DLM]"
+     */
+    @Override
+    void encodeDV(Address src, Address dst, int seq, ByteBuffer vector, ByteBuffer out) {
+        ByteBufferAppender text = new ByteBufferAppender(out);
+        text.append(MsgType.DV.name()).append(Message.DLM)
+                .append(src.ip).append(Message.DLM).append(Integer.toString(src.port)).append(Message.DLM)
+                .append(dst.ip).append(Message.DLM).append(Integer.toString(dst.port)).append(Message.DLM);
+        out.put(vector.duplicate());
+        text.append(Message.DLM).append(Integer.toString(seq)).append(Message.DLM);
+    }
+
+    @Override
+    Address contentDestination(ByteBuffer in) {
+        int pos = in.position();
+        int limit = in.limit();
+        int end = fieldEnd(in, pos, limit);
+        if (parseType(in, pos, end) != MsgType.CONTENT) {
+            return null;
+        }
+        pos = next(fieldEnd(in, next(end, limit), limit), limit); // skip the source
+        pos = next(fieldEnd(in, pos, limit), limit);
+        return parseAddress(in, pos, fieldEnd(in, next(fieldEnd(in, pos, limit), limit), limit), DLM[0]);
+    }
+
+    @Override
+    int contentFlow(ByteBuffer in) {
+        int limit = in.limit();
+        int pos = next(fieldEnd(in, in.position(), limit), limit);
+        int portEnd = fieldEnd(in, next(fieldEnd(in, pos, limit), limit), limit);
+        Address src = parseAddress(in, pos, portEnd, DLM[0]);
+        pos = next(portEnd, limit);
+        portEnd = fieldEnd(in, next(fieldEnd(in, pos, limit), limit), limit);
+        Address dst = parseAddress(in, pos, portEnd, DLM[0]);
+        pos = next(fieldEnd(in, next(portEnd, limit), limit), limit); // skip the time to live
+        ByteBuffer payload = in.duplicate();
+        payload.limit(fieldEnd(in, pos, limit));
+        payload.position(pos);
+        return ContentMessage.flowHash(src, dst, payload);
+    }
+
+    /**
+     * The time to live is the only field that changes length: the bytes
+     * before and after it are copied, and the hop is written before the
+     * delimiter that ends the path
+     */
+    @Override
+    ByteBuffer forwardContent(ByteBuffer in, Address hop, ByteBuffer spare) {
+        int start = in.position();
+        int limit = in.limit();
+        int pos = start;
+        for (int field = 0; field < 5; field++) { // type, source and destination
+            pos = next(fieldEnd(in, pos, limit), limit);
+        }
+        int ttlEnd = fieldEnd(in, pos, limit);
+        int pathEnd = limit - DLM.length;
+        if (ttlEnd >= pathEnd || fieldEnd(in, pathEnd, limit) != pathEnd) {
+            return null; // no path trailer to append to
+        }
+        int timeToLive = parseInt(in, pos, ttlEnd);
+        if (timeToLive <= 0) {
+            return null;
+        }
+        String ttl = Integer.toString(timeToLive - 1);
+        String step = hop.ip + ContentMessage.iDLM + hop.port + ContentMessage.pDLM;
+        int size = limit - start + ttl.length() + step.length() * 4;
+        ByteBuffer out = spare.capacity() - spare.position() >= size ? spare : ByteBuffer.allocate(size);
+        int outStart = out.position();
+        ByteBuffer src = in.duplicate();
+        src.limit(pos);
+        out.put(src);
+        new ByteBufferAppender(out).append(ttl);
+        src.limit(pathEnd);
+        src.position(ttlEnd);
+        out.put(src);
+        new ByteBufferAppender(out).append(step).append(Message.DLM);
+        out.limit(out.position());
+        out.position(outStart);
+        return out;
+    }
+
+    /**
+     * Parse the text representation of a message
+     *
+     * Text format: type[DLM]srcIP[DLM]srcPort[DLM]dstIP[DLM]dstPort[DLM]
+     * followed by the fields specific to each type of msg
+     */
+    @Override
+    Message decode(ByteBuffer in) {
+        int pos = in.position();
+        int limit = in.limit();
+        in.position(limit);
+
+        int end = fieldEnd(in, pos, limit);
+        MsgType type = parseType(in, pos, end);
+        pos = next(end, limit);
+        int portEnd = fieldEnd(in, next(fieldEnd(in, pos, limit), limit), limit);
+        Address src = parseAddress(in, pos, portEnd, DLM[0]);
+        pos = next(portEnd, limit);
+        portEnd = fieldEnd(in, next(fieldEnd(in, pos, limit), limit), limit);
+        Address dst = parseAddress(in, pos, portEnd, DLM[0]);
+        pos = next(portEnd, limit);
+        end = fieldEnd(in, pos, limit);
+
+        switch (type) {
+            case DV:
+                DistanceVector dv = parseDistVect(in, pos, end);
+                pos = next(end, limit);
+                end = fieldEnd(in, pos, limit);
+                return new DVMessage(src, dst, dv, end > pos ? parseInt(in, pos, end) : 0);
+            case DVDELTA:
+                int seq = parseInt(in, pos, end);
+                pos = next(end, limit);
+                end = fieldEnd(in, pos, limit);
+                int[][] changed = parseEntries(in, pos, end);
+                pos = next(end, limit);
+                return new DVDeltaMessage(src, dst, seq, changed[0], changed[1],
+                        parseAddressList(in, pos, fieldEnd(in, pos, limit)));
+            case WEIGHT:
+                return new WeightMessage(src, dst, parseInt(in, pos, end));
+            default:
+                int timeToLive = parseInt(in, pos, end);
+                pos = next(end, limit);
+                end = fieldEnd(in, pos, limit);
+                String msg = parseString(in, pos, end);
+                pos = next(end, limit);
+                return new ContentMessage(src, dst, timeToLive, msg,
+                        parsePath(in, pos, fieldEnd(in, pos, limit)));
+        }
+    }
+
+    /**
+     * Get the index where the field starting at pos ends: the next DLM, or
+     * the end of the message
+     */
+    private static int fieldEnd(ByteBuffer in, int pos, int limit) {
+        for (int i = pos; i <= limit - DLM.length; i++) {
+            if (in.get(i) == DLM[0] && in.get(i + 1) == DLM[1]
+                    && in.get(i + 2) == DLM[2] && in.get(i + 3) == DLM[3]) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Get the start of the field after the one ending at end
+     */
+    private static int next(int end, int limit) {
+        return Math.min(end + DLM.length, limit);
+    }
+
+    private static int indexOf(ByteBuffer in, byte b, int pos, int end) {
+        for (int i = pos; i < end; i++) {
+            if (in.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static MsgType parseType(ByteBuffer in, int pos, int end) {
+        for (MsgType type : MsgType.values()) {
+            String name = type.name();
+            if (name.length() == end - pos) {
+                int i = 0;
+                while (i < name.length() && in.get(pos + i) == name.charAt(i)) {
+                    i++;
+                }
+                if (i == name.length()) {
+                    return type;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Wrong type. Not a Message.");
+    }
+
+    private static int parseInt(ByteBuffer in, int pos, int end) {
+        boolean negative = pos < end && in.get(pos) == '-';
+        int i = negative ? pos + 1 : pos;
+        if (i == end) {
+            throw new IllegalArgumentException("Wrong format. Missing number.");
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = in.get(i) - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Wrong format. Bad number.");
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("Wrong format. Bad number.");
+        }
+        return (int) value;
+    }
+
+    private static String parseString(ByteBuffer in, int pos, int end) {
+        byte[] data = new byte[end - pos];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = in.get(pos + i);
+        }
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parse "ip[sep]port", where sep is the first byte of the separator used
+     * by the enclosing format. IPv4 literals are interned without building a
+     * String.
+     */
+    private static Address parseAddress(ByteBuffer in, int pos, int end, byte sep) {
+        int sepAt = indexOf(in, sep, pos, end);
+        if (sepAt < 0) {
+            throw new IllegalArgumentException("Wrong format. Bad address.");
+        }
+        int portAt = sep == DLM[0] ? sepAt + DLM.length : sepAt + 1;
+        int port = parseInt(in, portAt, end);
+        long ip = parseIPv4(in, pos, sepAt);
+        if (ip >= 0) {
+            return AddressTable.intern((int) ip, port);
+        }
+        return Address.of(parseString(in, pos, sepAt), port);
+    }
+
+    /**
+     * Same as Address.parseIPv4, reading the bytes of the buffer
+     */
+    private static long parseIPv4(ByteBuffer in, int pos, int end) {
+        long result = 0;
+        int octet = -1;
+        int octets = 0;
+        for (int i = pos; i <= end; i++) {
+            byte c = i < end ? in.get(i) : (byte) '.';
+            if (c == '.') {
+                if (octet < 0 || ++octets > 4) {
+                    return -1;
+                }
+                result = (result << 8) | octet;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        return octets == 4 ? result : -1;
+    }
+
+    /**
+     * Parse a distance vector:
+     * ip[INTRA_DLM]port[INTRA_DLM]dist[INTER_DLM]ip[INTRA_DLM]port[INTRA_DLM]dist ...
+     */
+    private static DistanceVector parseDistVect(ByteBuffer in, int pos, int end) {
+        DistanceVector dv = new DistanceVector();
+        while (pos < end) {
+            int entryEnd = indexOf(in, INTER_DLM, pos, end);
+            if (entryEnd < 0) {
+                entryEnd = end;
+            }
+            if (entryEnd > pos) {
+                int distAt = distanceAt(in, pos, entryEnd);
+                Address a = parseAddress(in, pos, distAt - 1, INTRA_DLM);
+                dv.updateDistance(a.id, parseDistance(in, distAt, entryEnd));
+            }
+            pos = entryEnd + 1;
+        }
+        return dv;
+    }
+
+    /**
+     * Parse the entries of a delta, in the format of a distance vector, into
+     * an array of address ids and an array of distances
+     */
+    private static int[][] parseEntries(ByteBuffer in, int pos, int end) {
+        int[] ids = new int[8];
+        int[] dists = new int[8];
+        int entries = 0;
+        while (pos < end) {
+            int entryEnd = indexOf(in, INTER_DLM, pos, end);
+            if (entryEnd < 0) {
+                entryEnd = end;
+            }
+            if (entryEnd > pos) {
+                int distAt = distanceAt(in, pos, entryEnd);
+                if (entries == ids.length) {
+                    ids = Arrays.copyOf(ids, entries * 2);
+                    dists = Arrays.copyOf(dists, entries * 2);
+                }
+                ids[entries] = parseAddress(in, pos, distAt - 1, INTRA_DLM).id;
+                dists[entries++] = parseDistance(in, distAt, entryEnd);
+            }
+            pos = entryEnd + 1;
+        }
+        return new int[][]{Arrays.copyOf(ids, entries), Arrays.copyOf(dists, entries)};
+    }
+
+    /**
+     * Get the index where the distance of the entry ip[INTRA_DLM]port[INTRA_DLM]dist
+     * starts
+     */
+    private static int distanceAt(ByteBuffer in, int pos, int entryEnd) {
+        int portAt = indexOf(in, INTRA_DLM, pos, entryEnd) + 1;
+        int distAt = portAt > 0 ? indexOf(in, INTRA_DLM, portAt, entryEnd) + 1 : 0;
+        if (distAt <= 0) {
+            throw new IllegalArgumentException("Wrong format. Bad distance vector entry.");
+        }
+        return distAt;
+    }
+
+    /**
+     * Parse the distance of an entry, never negative
+     */
+    private static int parseDistance(ByteBuffer in, int pos, int end) {
+        int d = parseInt(in, pos, end);
+        if (d < 0) {
+            throw new IllegalArgumentException("Wrong format. Negative distance.");
+        }
+        return d;
+    }
+
+    /**
+     * Parse a list of addresses: ip[INTRA_DLM]port[INTER_DLM]ip[INTRA_DLM]port ...
+     */
+    private static List<Address> parseAddressList(ByteBuffer in, int pos, int end) {
+        List<Address> list = new ArrayList<>();
+        while (pos < end) {
+            int entryEnd = indexOf(in, INTER_DLM, pos, end);
+            if (entryEnd < 0) {
+                entryEnd = end;
+            }
+            if (entryEnd > pos) {
+                list.add(parseAddress(in, pos, entryEnd, INTRA_DLM));
+            }
+            pos = entryEnd + 1;
+        }
+        return list;
+    }
+
+    /**
+     * Parse the path of a content message: ip[iDLM]port[pDLM]ip[iDLM]port ...
+     */
+    private static ArrayList<Address> parsePath(ByteBuffer in, int pos, int end) {
+        ArrayList<Address> path = new ArrayList<>();
+        while (pos < end) {
+            int entryEnd = indexOf(in, PATH_DLM, pos, end);
+            if (entryEnd < 0) {
+                entryEnd = end;
+            }
+            if (entryEnd > pos) {
+                path.add(parseAddress(in, pos, entryEnd, IP_PORT_DLM));
+            }
+            pos = entryEnd + 1;
+        }
+        return path;
+    }
+}
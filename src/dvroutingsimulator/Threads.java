@@ -0,0 +1,117 @@
+package dvroutingsimulator;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads of the routers: platform threads, or virtual threads
+ * when the JVM has them (JDK 21 and later). Virtual threads are looked up by
+ * reflection, so the project still builds and runs on older JDKs, where
+ * platform threads are used instead. On JDK 19 and 20 the API exists but is
+ * a preview, which fails without --enable-preview, so availability is decided
+ * once, by starting a virtual thread, rather than by finding the methods.
+ *
+ * @author thanhvu
+ */
+final class Threads {
+
+    private static final Method OF_VIRTUAL;     // Thread.ofVirtual()
+    private static final Method NAME;           // Thread.Builder.name(String, long)
+    private static final Method FACTORY;        // Thread.Builder.factory()
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            Thread probe = newVirtual(ofVirtual, name, factory, "probe").newThread(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            probe.start();
+            probe.join();
+        } catch (ReflectiveOperationException | RuntimeException | InterruptedException ex) {
+            ofVirtual = null; // older JDK, or preview not enabled
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private Threads() {
+    }
+
+    /**
+     * Create a factory of virtual threads named prefix-0, prefix-1...
+     */
+    private static ThreadFactory newVirtual(Method ofVirtual, Method name, Method factory, String prefix)
+            throws IllegalAccessException, InvocationTargetException {
+        Object builder = name.invoke(ofVirtual.invoke(null), prefix + "-", 0L);
+        return (ThreadFactory) factory.invoke(builder);
+    }
+
+    /**
+     * Check if the JVM can create virtual threads
+     *
+     * @return true if a virtual thread could be started, on JDK 21 and later
+     */
+    static boolean virtualAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Get a factory of threads named prefix-0, prefix-1...
+     *
+     * @param prefix The prefix of the names of the threads
+     * @param virtual true for virtual threads, ignored if the JVM has none
+     * @return The factory
+     */
+    static ThreadFactory factory(final String prefix, boolean virtual) {
+        if (virtual && virtualAvailable()) {
+            try {
+                return newVirtual(OF_VIRTUAL, NAME, FACTORY, prefix);
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                // the probe made the same calls, so this is not a missing feature
+                throw new IllegalStateException("virtual thread factory failed", ex);
+            }
+        }
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                return new Thread(task, prefix + "-" + count.getAndIncrement());
+            }
+        };
+    }
+
+    /**
+     * Get an executor starting a new virtual thread for each task: they are
+     * cheap enough to be started for every drain of an event loop instead of
+     * kept waiting in a pool. Only for JVMs with virtual threads, platform
+     * threads would be started just as often.
+     *
+     * @param prefix The prefix of the names of the threads
+     * @return The executor
+     * @throws IllegalStateException If the JVM has no virtual threads
+     */
+    static Executor perTask(String prefix) {
+        if (!virtualAvailable()) {
+            throw new IllegalStateException("virtual threads unavailable");
+        }
+        final ThreadFactory factory = factory(prefix, true);
+        return new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                factory.newThread(task).start();
+            }
+        };
+    }
+}
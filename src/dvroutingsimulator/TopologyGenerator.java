@@ -0,0 +1,497 @@
+package dvroutingsimulator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates synthetic networks to measure how the routers scale: rings,
+ * grids, Erdős–Rényi and Barabási–Albert random graphs and fat trees, with
+ * link weights drawn from a distribution. The network is written either as
+ * one input file per router or as a single topology file (see RouterFile).
+ * Router i gets the address ip:(port + i).
+ *
+ * @author thanhvu
+ */
+final class TopologyGenerator {
+
+    /**
+     * A distribution of link weights
+     */
+    abstract static class Weights {
+
+        /**
+         * Draw the weight of a link
+         *
+         * @param random The source of randomness
+         * @return A weight, at least 1
+         */
+        abstract int next(Random random);
+
+        /**
+         * Parse a distribution: "constant:w", "uniform:min:max" or
+         * "exponential:mean"
+         *
+         * @param spec The distribution
+         * @return The distribution
+         * @throws IllegalArgumentException If spec is not a distribution
+         */
+        static Weights parse(final String spec) {
+            String[] fields = spec.split(":");
+            switch (fields[0]) {
+                case "constant": {
+                    final int w = Integer.parseInt(fields[1]);
+                    if (w >= 1) {
+                        return new Weights() {
+                            @Override
+                            int next(Random random) {
+                                return w;
+                            }
+                        };
+                    }
+                    break;
+                }
+                case "uniform": {
+                    final int min = Integer.parseInt(fields[1]);
+                    final int max = Integer.parseInt(fields[2]);
+                    if (min >= 1 && max >= min) {
+                        return new Weights() {
+                            @Override
+                            int next(Random random) {
+                                return min + random.nextInt(max - min + 1);
+                            }
+                        };
+                    }
+                    break;
+                }
+                case "exponential": {
+                    final double mean = Double.parseDouble(fields[1]);
+                    if (mean > 0) {
+                        return new Weights() {
+                            @Override
+                            int next(Random random) {
+                                // a long tail of expensive links, most of them cheap
+                                long w = Math.round(-mean * Math.log(1 - random.nextDouble()));
+                                return (int) Math.max(1, Math.min(w, Integer.MAX_VALUE / 2));
+                            }
+                        };
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+            throw new IllegalArgumentException("bad weight distribution: " + spec);
+        }
+    }
+
+    private final Random random;
+    private final Weights weights;
+    private int routers;
+    private int links;
+    private int[] from;
+    private int[] to;
+    private int[] weight;
+
+    /**
+     * Create a generator of networks
+     *
+     * @param weights The distribution of the link weights
+     * @param seed The seed of the random graphs and weights
+     */
+    TopologyGenerator(Weights weights, long seed) {
+        this.random = new Random(seed);
+        this.weights = weights;
+        this.from = new int[16];
+        this.to = new int[16];
+        this.weight = new int[16];
+    }
+
+    /**
+     * Get the number of routers of the network
+     *
+     * @return The number of routers
+     */
+    int routers() {
+        return routers;
+    }
+
+    /**
+     * Get the number of links of the network
+     *
+     * @return The number of links
+     */
+    int links() {
+        return links;
+    }
+
+    /**
+     * Add a link between two routers, with a weight from the distribution
+     */
+    private void link(int a, int b) {
+        if (links == from.length) {
+            from = Arrays.copyOf(from, links * 2);
+            to = Arrays.copyOf(to, links * 2);
+            weight = Arrays.copyOf(weight, links * 2);
+        }
+        from[links] = a;
+        to[links] = b;
+        weight[links] = weights.next(random);
+        links++;
+    }
+
+    /**
+     * Generate a ring, each router linked to the next one
+     *
+     * @param n The number of routers, at least 3
+     */
+    void ring(int n) {
+        require(n >= 3, "a ring needs at least 3 routers");
+        routers = n;
+        for (int i = 0; i < n; i++) {
+            link(i, (i + 1) % n);
+        }
+    }
+
+    /**
+     * Generate a grid as square as possible, each router linked to the ones
+     * on its right and below it; the last row may be shorter
+     *
+     * @param n The number of routers, at least 2
+     */
+    void grid(int n) {
+        require(n >= 2, "a grid needs at least 2 routers");
+        routers = n;
+        int columns = (int) Math.ceil(Math.sqrt(n));
+        for (int i = 0; i < n; i++) {
+            if (i % columns + 1 < columns && i + 1 < n) {
+                link(i, i + 1);
+            }
+            if (i + columns < n) {
+                link(i, i + columns);
+            }
+        }
+    }
+
+    /**
+     * Generate an Erdős–Rényi graph G(n, p): each pair of routers is linked
+     * with probability p. The gaps between the links are drawn directly, so
+     * the cost follows the number of links and not of pairs. The parts left
+     * apart are then joined by one extra link each, the routers would not
+     * reach each other otherwise.
+     *
+     * @param n The number of routers, at least 2
+     * @param p The probability of each link, between 0 and 1 excluded
+     */
+    void erdosRenyi(int n, double p) {
+        require(n >= 2, "a random graph needs at least 2 routers");
+        require(p > 0 && p < 1, "the link probability must be between 0 and 1");
+        routers = n;
+        // Batagelj and Brandes, "Efficient generation of large random networks"
+        double logq = Math.log(1 - p);
+        int v = 1;
+        long w = -1;
+        while (v < n) {
+            w += 1 + (long) Math.floor(Math.log(1 - random.nextDouble()) / logq);
+            while (w >= v && v < n) {
+                w -= v;
+                v++;
+            }
+            if (v < n) {
+                link(v, (int) w);
+            }
+        }
+        connect();
+    }
+
+    /**
+     * Generate a Barabási–Albert graph: starting from a clique of m + 1
+     * routers, each new router links to m distinct routers chosen with a
+     * probability proportional to their number of links, which yields a few
+     * highly connected hubs
+     *
+     * @param n The number of routers, more than m
+     * @param m The number of links of each new router, at least 1
+     */
+    void barabasiAlbert(int n, int m) {
+        require(m >= 1 && n > m, "a scale-free graph needs m >= 1 and more than m routers");
+        routers = n;
+        for (int i = 0; i <= m; i++) {
+            for (int j = 0; j < i; j++) {
+                link(j, i);
+            }
+        }
+        int[] chosen = new int[m];
+        for (int v = m + 1; v < n; v++) {
+            int linked = links; // links before v, their ends are drawn from
+            for (int k = 0; k < m; k++) {
+                int t;
+                do {
+                    int l = random.nextInt(linked);
+                    t = random.nextBoolean() ? from[l] : to[l];
+                } while (contains(chosen, k, t));
+                chosen[k] = t;
+            }
+            for (int k = 0; k < m; k++) {
+                link(v, chosen[k]);
+            }
+        }
+    }
+
+    /**
+     * Generate a k-ary fat tree: (k/2)^2 core routers, and k pods of k/2
+     * aggregation and k/2 edge routers, so 5k^2/4 routers. In a pod, every
+     * edge router is linked to every aggregation router, and the j-th
+     * aggregation router to the j-th group of k/2 core routers.
+     *
+     * @param k The arity, even and at least 2
+     */
+    void fatTree(int k) {
+        require(k >= 2 && k % 2 == 0, "the arity of a fat tree must be even and at least 2");
+        int half = k / 2;
+        int cores = half * half;
+        routers = cores + k * k;
+        for (int pod = 0; pod < k; pod++) {
+            int aggregation = cores + pod * k;
+            int edge = aggregation + half;
+            for (int j = 0; j < half; j++) {
+                for (int e = 0; e < half; e++) {
+                    link(aggregation + j, edge + e);
+                }
+                for (int c = 0; c < half; c++) {
+                    link(aggregation + j, j * half + c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Link every router that cannot reach router 0 to a random router that
+     * can, in increasing order, so each part apart costs one link
+     */
+    private void connect() {
+        int[] parent = new int[routers];
+        for (int i = 0; i < routers; i++) {
+            parent[i] = i;
+        }
+        for (int l = 0; l < links; l++) {
+            parent[find(parent, from[l])] = find(parent, to[l]);
+        }
+        for (int i = 1; i < routers; i++) {
+            // routers 0 to i - 1 are connected
+            if (find(parent, i) != find(parent, 0)) {
+                int j = random.nextInt(i);
+                link(i, j);
+                parent[find(parent, i)] = find(parent, j);
+            }
+        }
+    }
+
+    /**
+     * Find the representative of the part of a router, halving the paths
+     */
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void require(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    /**
+     * Write the network as one topology file
+     *
+     * @param path The path of the file
+     * @param ip The IP address of every router
+     * @param port The port of router 0, the others follow
+     * @param comment The first line of the file, after "# "
+     * @throws IOException If the file cannot be written
+     */
+    void writeTopology(Path path, String ip, int port, String comment) throws IOException {
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("# " + comment + "\n");
+            for (int i = 0; i < routers; i++) {
+                out.write("router " + ip + " " + (port + i) + "\n");
+            }
+            for (int l = 0; l < links; l++) {
+                out.write("link " + from[l] + " " + to[l] + " " + weight[l] + "\n");
+            }
+        }
+    }
+
+    /**
+     * Write the network as one input file per router, named r0.txt,
+     * r1.txt... with leading zeros so that they sort in order
+     *
+     * @param dir The directory of the files, created if needed
+     * @param ip The IP address of every router
+     * @param port The port of router 0, the others follow
+     * @throws IOException If a file cannot be written
+     */
+    void writeRouterFiles(Path dir, String ip, int port) throws IOException {
+        // the links of each router, in the order of the links
+        int[] degree = new int[routers + 1];
+        for (int l = 0; l < links; l++) {
+            degree[from[l] + 1]++;
+            degree[to[l] + 1]++;
+        }
+        for (int i = 0; i < routers; i++) {
+            degree[i + 1] += degree[i];
+        }
+        int[] next = Arrays.copyOf(degree, routers);
+        int[] adjacent = new int[2 * links];
+        for (int l = 0; l < links; l++) {
+            adjacent[next[from[l]]++] = l;
+            adjacent[next[to[l]]++] = l;
+        }
+
+        Files.createDirectories(dir);
+        String format = "r%0" + String.valueOf(routers - 1).length() + "d.txt";
+        for (int i = 0; i < routers; i++) {
+            try (Writer out = Files.newBufferedWriter(dir.resolve(String.format(format, i)), StandardCharsets.UTF_8)) {
+                out.write(ip + " " + (port + i) + "\n");
+                for (int a = degree[i]; a < degree[i + 1]; a++) {
+                    int l = adjacent[a];
+                    int other = from[l] == i ? to[l] : from[l];
+                    out.write(ip + " " + (port + other) + " " + weight[l] + "\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Run the program
+     *
+     * @param args Command line argument, format "ring|grid|er|ba|fattree size
+     * [-p probability] [-m links] [-weights distribution] [-seed n] [-ip ip]
+     * [-port port] -out directory|-topology file", where size is the number
+     * of routers, or the arity k of a fat tree
+     */
+    public static void main(String[] args) {
+        String usage = "Format: ring|grid|er|ba|fattree size [-p probability] [-m links]"
+                + " [-weights constant:w|uniform:min:max|exponential:mean] [-seed n] [-ip ip] [-port port]"
+                + " -out directory|-topology file";
+        if (args.length < 2) {
+            System.out.println("Need a kind of network and a size. " + usage);
+            return;
+        }
+        String kind = args[0];
+        int size;
+        double p = -1;
+        int m = 2;
+        Weights weights = Weights.parse("constant:1");
+        long seed = 1;
+        String ip = "127.0.0.1";
+        int port = 10000;
+        Path out = null;
+        boolean topology = false;
+        try {
+            size = Integer.parseInt(args[1]);
+            for (int i = 2; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-p":
+                        p = Double.parseDouble(args[++i]);
+                        break;
+                    case "-m":
+                        m = Integer.parseInt(args[++i]);
+                        break;
+                    case "-weights":
+                        weights = Weights.parse(args[++i]);
+                        break;
+                    case "-seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "-ip":
+                        ip = args[++i];
+                        break;
+                    case "-port":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "-out":
+                        out = Paths.get(args[++i]);
+                        topology = false;
+                        break;
+                    case "-topology":
+                        out = Paths.get(args[++i]);
+                        topology = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+        } catch (RuntimeException ex) {
+            System.out.println("Wrong arguments: " + ex.getMessage() + ". " + usage);
+            return;
+        }
+        if (out == null) {
+            System.out.println("Need -out or -topology. " + usage);
+            return;
+        }
+
+        TopologyGenerator generator = new TopologyGenerator(weights, seed);
+        try {
+            switch (kind) {
+                case "ring":
+                    generator.ring(size);
+                    break;
+                case "grid":
+                    generator.grid(size);
+                    break;
+                case "er":
+                    // connected with high probability, with about n ln n links
+                    generator.erdosRenyi(size, p >= 0 ? p : Math.min(0.5, Math.log(size) / size * 2));
+                    break;
+                case "ba":
+                    generator.barabasiAlbert(size, m);
+                    break;
+                case "fattree":
+                    generator.fatTree(size);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown network " + kind);
+            }
+            if (port < 1 || port + generator.routers() - 1 > 65535) {
+                throw new IllegalArgumentException(generator.routers() + " routers do not fit in the ports from " + port);
+            }
+        } catch (IllegalArgumentException ex) {
+            System.out.println("Wrong arguments: " + ex.getMessage() + ". " + usage);
+            return;
+        }
+
+        StringBuilder command = new StringBuilder("generated by TopologyGenerator");
+        for (String arg : args) {
+            command.append(' ').append(arg);
+        }
+        try {
+            if (topology) {
+                generator.writeTopology(out, ip, port, command.toString());
+            } else {
+                generator.writeRouterFiles(out, ip, port);
+            }
+        } catch (IOException ex) {
+            System.out.println("ERROR: " + ex.getMessage());
+            return;
+        }
+        System.out.println(generator.routers() + " routers, " + generator.links() + " links written to " + out);
+    }
+}
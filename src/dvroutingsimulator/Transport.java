@@ -0,0 +1,41 @@
+package dvroutingsimulator;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * The way packets leave and enter a router. A transport either is polled,
+ * by a listener thread blocking in receive, or pushes its packets to the
+ * router itself from another thread, like the selector of a RouterHost or
+ * the clock of a Simulator; receive then returns null right away, so a
+ * listener started on it stops at once.
+ *
+ * @author thanhvu
+ */
+interface Transport {
+
+    /**
+     * Send a packet to a neighbor
+     *
+     * @param packet The bytes between the buffer's position and limit
+     * @param dst The neighbor to send to
+     * @throws IOException If the packet cannot be sent
+     */
+    void send(ByteBuffer packet, Neighbor dst) throws IOException;
+
+    /**
+     * Wait for the next packet and write it into a buffer
+     *
+     * @param dst The buffer to write the packet to, from its position
+     * @return The sender of the packet, null if the transport was closed or
+     * pushes its packets instead
+     * @throws IOException If receiving fails
+     */
+    SocketAddress receive(ByteBuffer dst) throws IOException;
+
+    /**
+     * Release the resources of the transport, wake up a pending receive
+     */
+    void close();
+}
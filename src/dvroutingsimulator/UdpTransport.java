@@ -0,0 +1,97 @@
+package dvroutingsimulator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * UDP transport over one long-lived non-blocking DatagramChannel, bound to the
+ * router's port and used for both sending and receiving. In blocking mode, for
+ * virtual threads, the channel blocks instead of waiting on a selector, which
+ * parks a virtual thread without holding its carrier thread.
+ *
+ * @author thanhvu
+ */
+class UdpTransport implements Transport {
+
+    private final DatagramChannel channel;
+    private final Selector selector; // null in blocking mode
+
+    /**
+     * Open the channel of a router
+     *
+     * @param port The port of the router
+     * @throws IOException If the port cannot be bound
+     */
+    UdpTransport(int port) throws IOException {
+        this(port, false);
+    }
+
+    /**
+     * Open the channel of a router
+     *
+     * @param port The port of the router
+     * @param blocking true to block in receive on the channel itself
+     * @throws IOException If the port cannot be bound
+     */
+    UdpTransport(int port, boolean blocking) throws IOException {
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        if (blocking) {
+            selector = null;
+            return;
+        }
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    @Override
+    public void send(ByteBuffer packet, Neighbor dst) throws IOException {
+        if (channel.send(packet, dst.getSocketAddress()) == 0) {
+            EventLog.shared().error("ERROR: send buffer full, packet to " + dst.getAddress().toString() + " dropped");
+        }
+    }
+
+    @Override
+    public SocketAddress receive(ByteBuffer dst) throws IOException {
+        if (selector == null) {
+            try {
+                return channel.receive(dst);
+            } catch (ClosedChannelException ex) {
+                return null; // closed while waiting
+            }
+        }
+        try {
+            while (selector.isOpen()) {
+                SocketAddress sender = channel.receive(dst);
+                if (sender != null) {
+                    return sender;
+                }
+                selector.select();
+                selector.selectedKeys().clear();
+            }
+        } catch (ClosedSelectorException ex) {
+            // closed while waiting
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+            channel.close();
+        } catch (IOException ex) {
+            EventLog.shared().error("ERROR: " + ex.getMessage());
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package dvroutingsimulator;
 
+import java.io.IOException;
+
 /**
  * A router control message that contains the new weight betwen src and dst routers.
  * This message should be used to advertise weight change to the other neighbor.
@@ -25,39 +27,31 @@ public class WeightMessage extends Message {
     }
 
     /**
-     * Constructor that parses a string representation of a WeightMessage
-     * Message's format: 
-     * 
-     * "type[DLM]srcIP[DLM]srcPort[DLM]
-     * dstIP[DLM]dstPort[DLM]weight"
+     * Constructor for WeightMessage from already interned addresses
      *
-     * @param text the text from which
+     * @param srcAdd address of source router
+     * @param dstAdd address of destination router
+     * @param w the new weight
      */
-    public WeightMessage(String text) {
-        super(text);
-        if (this.type != MsgType.WEIGHT) {
-            System.out.println("ERROR: Not a WEIGHT Type.");
-            return;
-        }
-        String[] fields = text.split(this.DLM);
-        this.weight = Integer.parseInt(fields[5]);
+    WeightMessage(Address srcAdd, Address dstAdd, int w) {
+        super(MsgType.WEIGHT, srcAdd, dstAdd);
+        this.weight = w;
     }
 
     /**
-     * Output a string representation of a WeightMessage using the following
+     * Write a string representation of a WeightMessage using the following
      * format: 
      * 
      * "type[DLM]srcIP[DLM]srcPort[DLM]
      * dstIP[DLM]dstPort[DLM]weight"
      *
-     * @return
+     * @param out The destination of the text
+     * @throws IOException If out cannot be written to
      */
     @Override
-    public String toString() {
-        String output = type + DLM + srcAdd.ip + DLM + srcAdd.port
-                + DLM + dstAdd.ip + DLM + dstAdd.port
-                + DLM + weight + DLM;
-        return output;
+    public void writeTo(Appendable out) throws IOException {
+        super.writeTo(out);
+        out.append(Integer.toString(weight)).append(DLM);
     }
 
     /**